@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.controllers;
+
+import org.ttrssreader.imageCache.ImageCache;
+import org.ttrssreader.model.pojos.Article;
+import org.ttrssreader.utils.Utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the content of articles which are stored without it. The content of the opened article is loaded on demand,
+ * the content (and optionally the images) of the articles around it are prefetched in the background so moving to
+ * the next article doesn't have to wait for the server.
+ */
+public class ArticleContentResolver {
+
+    private static final String TAG = ArticleContentResolver.class.getSimpleName();
+
+    /**
+     * number of articles before and after the opened one which are prefetched
+     */
+    public static final int PREFETCH_COUNT = 3;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private ConnectivityManager cm;
+    private PrefetchTask prefetchTask;
+
+    // Singleton (see http://stackoverflow.com/a/11165926)
+    private ArticleContentResolver() {
+    }
+
+    private static class InstanceHolder {
+        private static final ArticleContentResolver instance = new ArticleContentResolver();
+    }
+
+    public static ArticleContentResolver getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    public synchronized void initialize(final Context context) {
+        if (context != null)
+            cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * fetch the content of the given article from the server if it isn't stored yet. This blocks until the article
+     * was written to the DB, don't call it from the UI thread.
+     *
+     * @param articleId the article
+     * @return {@code true} if the content is stored now
+     */
+    public boolean resolve(int articleId) {
+        Set<Integer> ids = Collections.singleton(articleId);
+        if (DBHelper.getInstance().getArticleIdsWithoutContent(ids).isEmpty())
+            return true;
+        if (!Utils.isConnected(cm))
+            return false;
+
+        fetch(ids);
+        return DBHelper.getInstance().getArticleIdsWithoutContent(ids).isEmpty();
+    }
+
+    /**
+     * fetch the content of the given articles in the background, a prefetch which is still running is cancelled
+     *
+     * @param ids the articles, the most important one first
+     */
+    public synchronized void prefetch(Collection<Integer> ids) {
+        cancelPrefetch();
+        if (ids.isEmpty())
+            return;
+
+        prefetchTask = new PrefetchTask(new LinkedHashSet<>(ids));
+        executor.execute(prefetchTask);
+    }
+
+    /**
+     * stop the running prefetch, articles which have already been requested are still written to the DB
+     */
+    public synchronized void cancelPrefetch() {
+        if (prefetchTask != null) {
+            prefetchTask.cancelled = true;
+            prefetchTask = null;
+        }
+    }
+
+    private static void fetch(Set<Integer> ids) {
+        // The articles are already stored, their states must not be overwritten by the server's copy: a state the
+        // user changed in the meantime (e.g. the article was just marked read) may still wait in the outbox
+        ArticleWriter articles = new ArticleWriter(true);
+        Controller.getInstance().getConnector().getArticles(articles, ids);
+        articles.finish();
+    }
+
+    private boolean isImagePrefetchAllowed() {
+        if (!Controller.getInstance().prefetchImages() || !Controller.getInstance().loadImages())
+            return false;
+        if (!Controller.getInstance().cacheImagesOnlyWifi())
+            return true;
+
+        NetworkInfo wifi = cm.getNetworkInfo(ConnectivityManager.TYPE_WIFI);
+        return wifi != null && wifi.isConnected();
+    }
+
+    private class PrefetchTask implements Runnable {
+
+        private final Set<Integer> ids;
+        private volatile boolean cancelled = false;
+
+        private PrefetchTask(Set<Integer> ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled || !Utils.isConnected(cm))
+                return;
+
+            long time = System.currentTimeMillis();
+            try {
+                // All missing articles are fetched with one request
+                Set<Integer> missing = DBHelper.getInstance().getArticleIdsWithoutContent(ids);
+                if (!missing.isEmpty())
+                    fetch(missing);
+
+                if (cancelled || !isImagePrefetchAllowed())
+                    return;
+
+                ImageCache imageCache = Controller.getInstance().getImageCache();
+                if (imageCache == null)
+                    return;
+
+                for (Integer id : ids) {
+                    if (cancelled)
+                        return;
+
+                    Article article = DBHelper.getInstance().getArticle(id);
+                    if (article == null || article.content == null)
+                        continue;
+                    article.attachments = DBHelper.getInstance().getAttachments(id);
+                    imageCache.cacheImages(article);
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Prefetching articles failed: " + e.getMessage(), e);
+            } finally {
+                Log.d(TAG, String.format("Prefetched %s articles in %sms%s", ids.size(),
+                        System.currentTimeMillis() - time, cancelled ? " (cancelled)" : ""));
+            }
+        }
+    }
+
+}
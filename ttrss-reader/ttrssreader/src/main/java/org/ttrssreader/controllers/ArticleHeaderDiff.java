@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.controllers;
+
+import org.ttrssreader.model.pojos.Article;
+import org.ttrssreader.net.IArticleReceiver;
+import org.ttrssreader.utils.IntLongHashMap;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Receives the headers (ID, updated date and states, but no content) of articles and compares them with the cached
+ * articles. Articles which are new or have been updated on the server are collected so their content can be fetched
+ * afterwards, of the unchanged articles only the read, starred and published states are taken over.
+ */
+class ArticleHeaderDiff implements IArticleReceiver {
+
+    private final IntLongHashMap idUpdatedMap;
+
+    private final Set<Integer> ids = new HashSet<>();
+    private final Set<Integer> changedIds = new HashSet<>();
+    private int minId = Integer.MAX_VALUE;
+
+    // States of the unchanged articles, the changed ones get their states with the content
+    private final Set<Integer> unread = new HashSet<>();
+    private final Set<Integer> read = new HashSet<>();
+    private final Set<Integer> starred = new HashSet<>();
+    private final Set<Integer> notStarred = new HashSet<>();
+    private final Set<Integer> published = new HashSet<>();
+    private final Set<Integer> notPublished = new HashSet<>();
+
+    /**
+     * @param idUpdatedMap map of the IDs of the cached articles to their updated date
+     */
+    ArticleHeaderDiff(IntLongHashMap idUpdatedMap) {
+        this.idUpdatedMap = idUpdatedMap;
+    }
+
+    @Override
+    public void receiveArticle(Article a) {
+        ids.add(a.id);
+        if (a.id < minId)
+            minId = a.id;
+
+        long updated = idUpdatedMap.get(a.id, Long.MIN_VALUE);
+        if (updated == Long.MIN_VALUE || a.updated == null || a.updated.getTime() > updated) {
+            changedIds.add(a.id);
+            return;
+        }
+
+        (a.isUnread ? unread : read).add(a.id);
+        (a.isStarred ? starred : notStarred).add(a.id);
+        (a.isPublished ? published : notPublished).add(a.id);
+    }
+
+    /**
+     * write the states of the unchanged articles to the DB, only rows with a different state are actually updated
+     */
+    void updateStates() {
+        DBHelper db = DBHelper.getInstance();
+        db.markArticles(unread, DBHelper.MARK_READ, 1);
+        db.markArticles(read, DBHelper.MARK_READ, 0);
+        db.markArticles(starred, DBHelper.MARK_STAR, 1);
+        db.markArticles(notStarred, DBHelper.MARK_STAR, 0);
+        db.markArticles(published, DBHelper.MARK_PUBLISH, 1);
+        db.markArticles(notPublished, DBHelper.MARK_PUBLISH, 0);
+    }
+
+    /**
+     * @return IDs of all received articles
+     */
+    Set<Integer> getIds() {
+        return ids;
+    }
+
+    /**
+     * @return IDs of the articles which are new or have been updated on the server
+     */
+    Set<Integer> getChangedIds() {
+        return changedIds;
+    }
+
+    int getMinId() {
+        return minId;
+    }
+
+}
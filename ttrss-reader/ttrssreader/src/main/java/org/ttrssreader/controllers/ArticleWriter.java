@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.controllers;
+
+import org.ttrssreader.model.pojos.Article;
+import org.ttrssreader.net.IArticleReceiver;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Receives articles from the JSON parser and writes them to the DB in a single background thread. The parser only
+ * blocks when the writer falls behind by more than {@link #QUEUE_SIZE} articles, so memory stays flat no matter how
+ * many articles are fetched, and the articles are committed in transactions of up to {@link #BATCH_SIZE} articles.
+ * <p/>
+ * {@link #finish()} has to be called after the last article was received, the collected information about the
+ * written articles is only valid afterwards. It reports whether all received articles were actually written.
+ * <p/>
+ * A writer for content only stores the content and attachments of articles which are already stored, their states
+ * are left alone.
+ */
+class ArticleWriter implements IArticleReceiver {
+
+    private static final String TAG = ArticleWriter.class.getSimpleName();
+
+    private static final int QUEUE_SIZE = 200;
+    private static final int BATCH_SIZE = 50;
+
+    /** marks the end of the queue */
+    private static final Article END = new Article();
+
+    private final BlockingQueue<Article> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread writer;
+    private final boolean contentOnly;
+
+    private final long startTime;
+    private int count = 0;
+    private int maxId = Integer.MIN_VALUE;
+
+    /** number of received articles which were not handed to the writer because the parser was interrupted */
+    private int dropped = 0;
+    /** set by the writer thread if a batch could not be written */
+    private volatile boolean writeFailed = false;
+
+    ArticleWriter() {
+        this(false);
+    }
+
+    /**
+     * @param contentOnly only store the content and attachments of articles which are already stored
+     */
+    ArticleWriter(boolean contentOnly) {
+        this.contentOnly = contentOnly;
+        startTime = System.currentTimeMillis();
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, TAG);
+        writer.start();
+    }
+
+    @Override
+    public void receiveArticle(Article a) {
+        count++;
+        if (a.id > maxId)
+            maxId = a.id;
+
+        enqueue(a);
+    }
+
+    /**
+     * waits until all received articles have been written to the DB. An interrupt does not stop the waiting, it is
+     * restored afterwards.
+     *
+     * @return {@code true} if all received articles were written, {@code false} if articles were dropped or a batch
+     * could not be written
+     */
+    boolean finish() {
+        boolean interrupted = false;
+        // The writer only stops on END, so it has to be delivered no matter what
+        while (true) {
+            try {
+                queue.put(END);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        while (true) {
+            try {
+                writer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        long time = Math.max(1, System.currentTimeMillis() - startTime);
+        if (dropped > 0 || writeFailed) {
+            Log.w(TAG, String.format("Wrote only some of %s articles in %s ms (%s dropped, write failed: %s)", count,
+                    time, dropped, writeFailed));
+            return false;
+        }
+        Log.d(TAG, String.format("Wrote %s articles in %s ms (%s articles/s)", count, time, count * 1000 / time));
+        return true;
+    }
+
+    /**
+     * hands the article to the writer. If the parser gets interrupted the article is dropped and counted, the
+     * interrupt is restored so the caller can stop parsing.
+     */
+    private void enqueue(Article a) {
+        try {
+            queue.put(a);
+        } catch (InterruptedException e) {
+            dropped++;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        List<Article> batch = new ArrayList<>(BATCH_SIZE);
+        boolean done = false;
+        while (!done) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                // Nothing was taken from the queue yet, so nothing is lost. Don't stop here, the parser would block
+                // forever otherwise and the articles still in the queue would be lost.
+                Log.w(TAG, "Interrupted while waiting for articles, still waiting for the end of the queue");
+                continue;
+            }
+
+            // END is always the last element that gets added
+            if (batch.get(batch.size() - 1) == END) {
+                batch.remove(batch.size() - 1);
+                done = true;
+            }
+
+            try {
+                if (contentOnly)
+                    DBHelper.getInstance().insertArticleContents(batch);
+                else
+                    DBHelper.getInstance().insertArticles(batch);
+            } catch (RuntimeException e) {
+                // Keep on draining the queue, the parser would block forever otherwise
+                writeFailed = true;
+                Log.e(TAG, "Articles could not be written: " + e.getMessage(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return the number of received articles
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the highest received article ID or {@link Integer#MIN_VALUE} if no article was received
+     */
+    int getMaxId() {
+        return maxId;
+    }
+
+}
@@ -31,9 +31,11 @@ import org.ttrssreader.utils.AsyncTask;
 import org.ttrssreader.utils.SSLUtils;
 import org.ttrssreader.utils.Utils;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.net.ConnectivityManager;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.preference.PreferenceManager;
@@ -52,7 +54,9 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.GeneralSecurityException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -87,7 +91,7 @@ public class Controller implements OnSharedPreferenceChangeListener {
     private WeakReference<Context> contextRef;
     private WifiManager wifiManager;
 
-    private JSONConnector ttrssConnector;
+    private volatile JSONConnector ttrssConnector;
     private static final Object lockConnector = new Object();
 
     private ImageCache imageCache = null;
@@ -135,6 +139,12 @@ public class Controller implements OnSharedPreferenceChangeListener {
     private Boolean deleteDbScheduled = null;
     private Boolean cacheImagesOnStartup = null;
     private Boolean cacheImagesOnlyWifi = null;
+    private Boolean prefetchImages = null;
+    private Integer purgeArticleLimit = null;
+    private Integer purgeArticleMaxAge = null;
+    private Boolean purgeKeepStarred = null;
+    private Boolean purgeKeepPublished = null;
+    private String feedRetentionPolicies = null;
     private Boolean onlyUseWifi = null;
     private Boolean noCrashreports = null;
     private Boolean noCrashreportsUntilUpdate = null;
@@ -148,6 +158,12 @@ public class Controller implements OnSharedPreferenceChangeListener {
     private Integer sinceId = null;
     private Long lastSync = null;
     private Long lastCleanup = null;
+    private Integer headlinesPipelineDepth = null;
+    private Integer lazyServerConcurrency = null;
+    private String lazyServerFeedUpdates = null;
+    private String sessionId = null;
+    private Integer sessionApiLevel = null;
+    private String sessionAccount = null;
     private Boolean lowMemory = false;
 
     public volatile Set<Integer> lastOpenedFeeds = new HashSet<>();
@@ -236,6 +252,19 @@ public class Controller implements OnSharedPreferenceChangeListener {
                         SSLUtils.trustAllHost();
                     }
 
+                    // Log in while the DB is initialized if there is no stored session, the SSL-Stuff is needed. The
+                    // login runs on its own thread so it doesn't hold up the rest of the initialization.
+                    ConnectivityManager cm = (ConnectivityManager) context
+                            .getSystemService(Context.CONNECTIVITY_SERVICE);
+                    if (!Utils.checkIsConfigInvalid() && Utils.isConnected(cm)) {
+                        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                getConnector().prepareSession();
+                            }
+                        });
+                    }
+
                     // This will be accessed when displaying an article or starting the imageCache. When caching it
                     // is done
                     // anyway so we can just do it in background and the ImageCache starts once it is done.
@@ -494,29 +523,25 @@ public class Controller implements OnSharedPreferenceChangeListener {
     public JSONConnector getConnector() {
         // Check if connector needs to be reinitialized because of per-wifi-settings:
         boolean useOldConnector = useOldConnector();
-        if (useOldConnector && ttrssConnector instanceof JavaJSONConnector)
-            ttrssConnector = null;
-        if (!useOldConnector && ttrssConnector instanceof ApacheJSONConnector)
-            ttrssConnector = null;
 
         // Initialized inside initializeController();
-        if (ttrssConnector != null) {
-            return ttrssConnector;
-        } else {
-            synchronized (lockConnector) {
-                if (ttrssConnector == null) {
-                    if (useOldConnector) {
-                        ttrssConnector = new ApacheJSONConnector();
-                    } else {
-                        ttrssConnector = new JavaJSONConnector();
-                    }
+        JSONConnector connector = ttrssConnector;
+        if (connector != null && useOldConnector == connector instanceof ApacheJSONConnector)
+            return connector;
+
+        synchronized (lockConnector) {
+            connector = ttrssConnector;
+            if (connector == null || useOldConnector != connector instanceof ApacheJSONConnector) {
+                if (useOldConnector) {
+                    connector = new ApacheJSONConnector();
+                } else {
+                    connector = new JavaJSONConnector();
                 }
+                // Only hand it out once it is initialized, it is used by several threads at once
+                connector.init();
+                ttrssConnector = connector;
             }
-            if (ttrssConnector != null) {
-                ttrssConnector.init();
-                return ttrssConnector;
-            } else
-                throw new RuntimeException("Connector could not be initialized.");
+            return connector;
         }
     }
 
@@ -980,6 +1005,68 @@ public class Controller implements OnSharedPreferenceChangeListener {
         this.cacheImagesOnlyWifi = cacheImagesOnlyWifi;
     }
 
+    public boolean prefetchImages() {
+        if (prefetchImages == null)
+            prefetchImages = prefs.getBoolean(Constants.PREFETCH_IMAGES, Constants.PREFETCH_IMAGES_DEFAULT);
+        return prefetchImages;
+    }
+
+    public void setPrefetchImages(boolean prefetchImages) {
+        put(Constants.PREFETCH_IMAGES, prefetchImages);
+        this.prefetchImages = prefetchImages;
+    }
+
+    /**
+     * @return maximum number of stored articles, starred and published ones may be kept in addition
+     */
+    public Integer purgeArticleLimit() {
+        if (purgeArticleLimit == null)
+            purgeArticleLimit = prefs.getInt(Constants.PURGE_ARTICLE_LIMIT, Constants.PURGE_ARTICLE_LIMIT_DEFAULT);
+        return purgeArticleLimit;
+    }
+
+    public void setPurgeArticleLimit(Integer purgeArticleLimit) {
+        put(Constants.PURGE_ARTICLE_LIMIT, purgeArticleLimit);
+        this.purgeArticleLimit = purgeArticleLimit;
+    }
+
+    /**
+     * @return maximum age of stored articles in days, 0 if articles are kept regardless of their age
+     */
+    public Integer purgeArticleMaxAge() {
+        if (purgeArticleMaxAge == null)
+            purgeArticleMaxAge = prefs.getInt(Constants.PURGE_ARTICLE_MAX_AGE, Constants.PURGE_ARTICLE_MAX_AGE_DEFAULT);
+        return purgeArticleMaxAge;
+    }
+
+    public void setPurgeArticleMaxAge(Integer purgeArticleMaxAge) {
+        put(Constants.PURGE_ARTICLE_MAX_AGE, purgeArticleMaxAge);
+        this.purgeArticleMaxAge = purgeArticleMaxAge;
+    }
+
+    public boolean purgeKeepStarred() {
+        if (purgeKeepStarred == null)
+            purgeKeepStarred = prefs.getBoolean(Constants.PURGE_KEEP_STARRED, Constants.PURGE_KEEP_STARRED_DEFAULT);
+        return purgeKeepStarred;
+    }
+
+    public void setPurgeKeepStarred(boolean purgeKeepStarred) {
+        put(Constants.PURGE_KEEP_STARRED, purgeKeepStarred);
+        this.purgeKeepStarred = purgeKeepStarred;
+    }
+
+    public boolean purgeKeepPublished() {
+        if (purgeKeepPublished == null)
+            purgeKeepPublished = prefs.getBoolean(Constants.PURGE_KEEP_PUBLISHED,
+                    Constants.PURGE_KEEP_PUBLISHED_DEFAULT);
+        return purgeKeepPublished;
+    }
+
+    public void setPurgeKeepPublished(boolean purgeKeepPublished) {
+        put(Constants.PURGE_KEEP_PUBLISHED, purgeKeepPublished);
+        this.purgeKeepPublished = purgeKeepPublished;
+    }
+
     public boolean onlyUseWifi() {
         if (onlyUseWifi == null)
             onlyUseWifi = prefs.getBoolean(Constants.ONLY_USE_WIFI, Constants.ONLY_USE_WIFI_DEFAULT);
@@ -1076,6 +1163,157 @@ public class Controller implements OnSharedPreferenceChangeListener {
         return lastSync;
     }
 
+    /**
+     * @return the number of headline pages which are requested from the server in parallel, at least 1
+     */
+    public int headlinesPipelineDepth() {
+        if (headlinesPipelineDepth == null)
+            headlinesPipelineDepth = Math.max(1, prefs.getInt(Constants.HEADLINES_PIPELINE_DEPTH,
+                    Constants.HEADLINES_PIPELINE_DEPTH_DEFAULT));
+        // Every page in flight is buffered in memory
+        return isLowMemory() ? 1 : headlinesPipelineDepth;
+    }
+
+    /**
+     * @return the number of feeds which are updated on the lazy server in parallel, at least 1
+     */
+    public int lazyServerConcurrency() {
+        if (lazyServerConcurrency == null)
+            lazyServerConcurrency = Math.max(1, prefs.getInt(Constants.LAZY_SERVER_CONCURRENCY,
+                    Constants.LAZY_SERVER_CONCURRENCY_DEFAULT));
+        return lazyServerConcurrency;
+    }
+
+    /**
+     * @return the session ID of the last login to the current server with the current user, {@code null} if there is
+     * none
+     */
+    public String getSessionId() {
+        if (sessionId == null)
+            sessionId = prefs.getString(Constants.SESSION_ID, Constants.SESSION_ID_DEFAULT);
+        if (sessionAccount == null)
+            sessionAccount = prefs.getString(Constants.SESSION_ACCOUNT, Constants.SESSION_ACCOUNT_DEFAULT);
+        if (sessionId.isEmpty() || !sessionAccount.equals(currentAccount()))
+            return null;
+        return sessionId;
+    }
+
+    public int getSessionApiLevel() {
+        if (sessionApiLevel == null)
+            sessionApiLevel = prefs.getInt(Constants.SESSION_API_LEVEL, Constants.SESSION_API_LEVEL_DEFAULT);
+        return sessionApiLevel;
+    }
+
+    /**
+     * store the session so it can be reused after a restart, it only belongs to the current server and user
+     *
+     * @param sessionId the session ID, {@code null} removes the stored session
+     * @param apiLevel  the API level of the server
+     */
+    public void setSession(String sessionId, int apiLevel) {
+        SharedPreferences.Editor editor = prefs.edit();
+        if (sessionId == null) {
+            editor.remove(Constants.SESSION_ID);
+            editor.remove(Constants.SESSION_API_LEVEL);
+            editor.remove(Constants.SESSION_ACCOUNT);
+            this.sessionId = Constants.SESSION_ID_DEFAULT;
+            this.sessionApiLevel = Constants.SESSION_API_LEVEL_DEFAULT;
+            this.sessionAccount = Constants.SESSION_ACCOUNT_DEFAULT;
+        } else {
+            String account = currentAccount();
+            editor.putString(Constants.SESSION_ID, sessionId);
+            editor.putInt(Constants.SESSION_API_LEVEL, apiLevel);
+            editor.putString(Constants.SESSION_ACCOUNT, account);
+            this.sessionId = sessionId;
+            this.sessionApiLevel = apiLevel;
+            this.sessionAccount = account;
+        }
+        editor.apply();
+    }
+
+    private String currentAccount() {
+        return hostname() + " " + username();
+    }
+
+    /**
+     * @return map of feed IDs to the time the feed was last updated on the lazy server
+     */
+    @SuppressLint("UseSparseArrays")
+    public Map<Integer, Long> getLazyServerFeedUpdates() {
+        if (lazyServerFeedUpdates == null)
+            lazyServerFeedUpdates = prefs.getString(Constants.LAZY_SERVER_FEED_UPDATES,
+                    Constants.LAZY_SERVER_FEED_UPDATES_DEFAULT);
+
+        Map<Integer, Long> ret = new HashMap<>();
+        for (String entry : lazyServerFeedUpdates.split(",")) {
+            int pos = entry.indexOf(':');
+            if (pos <= 0)
+                continue;
+            try {
+                ret.put(Integer.parseInt(entry.substring(0, pos)), Long.parseLong(entry.substring(pos + 1)));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring invalid feed update entry: " + entry);
+            }
+        }
+        return ret;
+    }
+
+    public void setLazyServerFeedUpdates(Map<Integer, Long> feedUpdates) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Long> entry : feedUpdates.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        put(Constants.LAZY_SERVER_FEED_UPDATES, sb.toString());
+        this.lazyServerFeedUpdates = sb.toString();
+    }
+
+    /**
+     * @return map of feed IDs to the retention policies which replace the global limits for the articles of the feed
+     */
+    public Map<Integer, RetentionEngine.Policy> getFeedRetentionPolicies() {
+        if (feedRetentionPolicies == null)
+            feedRetentionPolicies = prefs.getString(Constants.FEED_RETENTION_POLICIES,
+                    Constants.FEED_RETENTION_POLICIES_DEFAULT);
+
+        Map<Integer, RetentionEngine.Policy> ret = new HashMap<>();
+        for (String entry : feedRetentionPolicies.split(",")) {
+            String[] parts = entry.split(":");
+            if (parts.length != 3)
+                continue;
+            try {
+                ret.put(Integer.parseInt(parts[0]),
+                        new RetentionEngine.Policy(Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "Ignoring invalid retention policy: " + entry);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param feedId the feed
+     * @param policy the policy for the articles of the feed, {@code null} to use the global limits again
+     */
+    public void setFeedRetentionPolicy(int feedId, RetentionEngine.Policy policy) {
+        Map<Integer, RetentionEngine.Policy> policies = getFeedRetentionPolicies();
+        if (policy == null)
+            policies.remove(feedId);
+        else
+            policies.put(feedId, policy);
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, RetentionEngine.Policy> entry : policies.entrySet()) {
+            if (sb.length() > 0)
+                sb.append(',');
+            sb.append(entry.getKey()).append(':').append(entry.getValue().maxArticles).append(':')
+                    .append(entry.getValue().maxAgeDays);
+        }
+        put(Constants.FEED_RETENTION_POLICIES, sb.toString());
+        this.feedRetentionPolicies = sb.toString();
+    }
+
     public void lowMemory(boolean lowMemory) {
         if (lowMemory && !this.lowMemory)
             Log.w(TAG, "lowMemory-Situation detected, trying to reduce memory footprint...");
@@ -26,10 +26,13 @@ import org.ttrssreader.model.pojos.Feed;
 import org.ttrssreader.model.pojos.Label;
 import org.ttrssreader.model.pojos.RemoteFile;
 import org.ttrssreader.utils.AsyncTask;
+import org.ttrssreader.utils.ContentCompression;
+import org.ttrssreader.utils.IntLongHashMap;
 import org.ttrssreader.utils.StringSupport;
 import org.ttrssreader.utils.Utils;
 
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -38,7 +41,6 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
-import android.text.Html;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -46,31 +48,34 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class DBHelper {
 
     private static final String TAG = DBHelper.class.getSimpleName();
 
     private static final String DATABASE_NAME = "ttrss.db";
-    private static final int DATABASE_VERSION = 60;
+    private static final int DATABASE_VERSION = 67;
 
     public static final String TABLE_CATEGORIES = "categories";
     public static final String TABLE_FEEDS = "feeds";
     public static final String TABLE_ARTICLES = "articles";
+    public static final String TABLE_ARTICLE_CONTENT = "article_content";
     public static final String TABLE_ARTICLES2LABELS = "articles2labels";
     private static final String TABLE_MARK = "marked";
+    public static final String TABLE_OUTBOX = "outbox";
     public static final String TABLE_REMOTEFILES = "remotefiles";
     public static final String TABLE_REMOTEFILE2ARTICLE = "remotefile2article";
+    public static final String TABLE_ATTACHMENTS = "attachments";
 
     static final String MARK_READ = "isUnread";
     static final String MARK_STAR = "isStarred";
@@ -104,30 +109,40 @@ public class DBHelper {
                     + " articleUrl TEXT,"
                     + " articleCommentUrl TEXT,"
                     + " updateDate INTEGER,"
-                    + " content TEXT,"
-                    + " attachments TEXT,"
                     + " isStarred INTEGER,"
                     + " isPublished INTEGER,"
                     + " cachedImages INTEGER DEFAULT 0,"
                     + " articleLabels TEXT,"
                     + " author TEXT)";
 
+    // The content is kept out of the articles table so headline lists, counters and purging only read narrow rows.
+    // It is stored as text or, if that saves space, compressed by ContentCompression as BLOB.
+    private static final String CREATE_TABLE_ARTICLE_CONTENT =
+            "CREATE TABLE IF NOT EXISTS "
+                    + TABLE_ARTICLE_CONTENT
+                    + " (_id INTEGER PRIMARY KEY"
+                    + "   REFERENCES " + TABLE_ARTICLES + "(_id)"
+                    + "     ON DELETE CASCADE,"
+                    + " content TEXT)";
+
     private static final String CREATE_TABLE_ARTICLES2LABELS =
             "CREATE TABLE "
                     + TABLE_ARTICLES2LABELS
                     + " (articleId INTEGER,"
                     + " labelId INTEGER, PRIMARY KEY(articleId, labelId))";
 
-    private static final String CREATE_TABLE_MARK =
-            "CREATE TABLE "
-                    + TABLE_MARK
-                    + " (id INTEGER,"
-                    + " type INTEGER,"
-                    + " " + MARK_READ + " INTEGER,"
-                    + " " + MARK_STAR + " INTEGER,"
-                    + " " + MARK_PUBLISH + " INTEGER,"
-                    + " " + MARK_NOTE + " TEXT,"
-                    + " PRIMARY KEY(id, type))";
+    // Local state changes which still have to be sent to the server, in the order they were made. There is only one
+    // row per article, field and label, a newer change replaces the pending one and moves it to the end.
+    private static final String CREATE_TABLE_OUTBOX =
+            "CREATE TABLE IF NOT EXISTS "
+                    + TABLE_OUTBOX
+                    + " (seq INTEGER PRIMARY KEY AUTOINCREMENT,"
+                    + " articleId INTEGER,"
+                    + " field INTEGER,"
+                    + " labelId INTEGER DEFAULT 0,"
+                    + " state INTEGER,"
+                    + " data TEXT,"
+                    + " UNIQUE(articleId, field, labelId))";
 
     private static final String INSERT_CATEGORY =
             "REPLACE INTO "
@@ -142,13 +157,43 @@ public class DBHelper {
                     + " VALUES (?, ?, ?, ?, ?)";
 
     private static final String INSERT_ARTICLE =
-            "INSERT OR REPLACE INTO "
+            "INSERT OR IGNORE INTO "
                     + TABLE_ARTICLES
-                    + " (_id, feedId, title, isUnread, articleUrl, articleCommentUrl, updateDate, content, attachments, isStarred, isPublished, cachedImages, articleLabels, author)"
-                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, coalesce((SELECT cachedImages FROM " + TABLE_ARTICLES
-                    + " WHERE _id=?), NULL), ?, ?)";
-    // This should insert new values or replace existing values but should always keep an already inserted value for "cachedImages".
-    // When inserting it is set to the default value which is 0 (not "NULL").
+                    + " (_id, feedId, title, isUnread, articleUrl, articleCommentUrl, updateDate, isStarred, isPublished, articleLabels, author, cachedImages)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NULL)";
+
+    private static final String UPDATE_ARTICLE =
+            "UPDATE "
+                    + TABLE_ARTICLES
+                    + " SET feedId=?, title=?, isUnread=" + keepPendingState("isUnread", StateOutbox.FIELD_UNREAD)
+                    + ", articleUrl=?, articleCommentUrl=?, updateDate=?, isStarred="
+                    + keepPendingState("isStarred", StateOutbox.FIELD_STARRED)
+                    + ", isPublished=" + keepPendingState("isPublished", StateOutbox.FIELD_PUBLISHED)
+                    + ", articleLabels=?, author=?"
+                    + " WHERE _id=?";
+    // Articles are updated first and only inserted if they don't exist yet. This keeps an already inserted value for
+    // "cachedImages" and, unlike "INSERT OR REPLACE", fires the UPDATE-triggers which maintain the unread counters.
+    // A state which is still waiting in the outbox is kept, the server doesn't know about it yet.
+
+    private static final String INSERT_ARTICLE_CONTENT =
+            "REPLACE INTO "
+                    + TABLE_ARTICLE_CONTENT
+                    + " (_id, content)"
+                    + " VALUES (?, ?)";
+
+    /**
+     * @return the value for the given state column in {@link #UPDATE_ARTICLE}, the bound value from the server or the
+     * stored value if a change of this state is waiting in the outbox
+     */
+    private static String keepPendingState(String column, int field) {
+        return "CASE WHEN EXISTS (SELECT 1 FROM " + TABLE_OUTBOX + " WHERE articleId=" + TABLE_ARTICLES + "._id"
+                + " AND field=" + field + ") THEN " + column + " ELSE ? END";
+    }
+
+    private static final String COUNT_ARTICLE =
+            "SELECT COUNT(*) FROM "
+                    + TABLE_ARTICLES
+                    + " WHERE _id=?";
 
     private static final String INSERT_LABEL =
             "REPLACE INTO "
@@ -156,6 +201,11 @@ public class DBHelper {
                     + " (articleId, labelId)"
                     + " VALUES (?, ?)";
 
+    private static final String DELETE_LABEL =
+            "DELETE FROM "
+                    + TABLE_ARTICLES2LABELS
+                    + " WHERE articleId=? AND labelId=?";
+
     private static final String INSERT_REMOTEFILE =
             "INSERT OR FAIL INTO "
                     + TABLE_REMOTEFILES
@@ -167,21 +217,46 @@ public class DBHelper {
                     + TABLE_REMOTEFILE2ARTICLE
                     + " (remotefileId, articleId)"
                     + " VALUES (?, ?)";
+
+    private static final String INSERT_ATTACHMENT_REMOTEFILE =
+            "INSERT OR IGNORE INTO "
+                    + TABLE_REMOTEFILES
+                    + " (url, ext)"
+                    + " VALUES (?, '')";
+
+    private static final String INSERT_ATTACHMENT =
+            "INSERT OR IGNORE INTO "
+                    + TABLE_ATTACHMENTS
+                    + " (articleId, remotefileId)"
+                    + " SELECT ?, id FROM " + TABLE_REMOTEFILES
+                    + " WHERE url=?";
+
+    // Attachments are remote files of the article, link them so they are treated like images found in the content
+    // when articles and their remote files are deleted
+    private static final String INSERT_ATTACHMENT_REMOTEFILE2ARTICLE =
+            "INSERT OR IGNORE INTO "
+                    + TABLE_REMOTEFILE2ARTICLE
+                    + " (remotefileId, articleId)"
+                    + " SELECT id, ? FROM " + TABLE_REMOTEFILES
+                    + " WHERE url=?";
+
+    private static final String DELETE_ATTACHMENTS =
+            "DELETE FROM "
+                    + TABLE_ATTACHMENTS
+                    + " WHERE articleId=?";
+
+    private static final String INSERT_OUTBOX =
+            "REPLACE INTO "
+                    + TABLE_OUTBOX
+                    + " (articleId, field, labelId, state, data)"
+                    + " VALUES (?, ?, ?, ?, ?)";
     // @formatter:on
 
     WeakReference<Context> contextRef;
     private volatile boolean initialized = false;
 
-    private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
-    private final Lock r = rwl.readLock();
-    private final Lock w = rwl.writeLock();
-
-    private void readLock(boolean lock) {
-        if (lock)
-            r.lock();
-        else
-            r.unlock();
-    }
+    // Only writers are serialized, readers run in parallel to the writer since the DB is in WAL mode
+    private final Lock w = new ReentrantLock();
 
     private void writeLock(boolean lock) {
         if (lock)
@@ -200,15 +275,25 @@ public class DBHelper {
     private final Object insertFeedLock = new Object();
     private final Object insertArticleLock = new Object();
     private final Object insertLabelLock = new Object();
+    private final Object insertOutboxLock = new Object();
     private final Object insertRemoteFileLock = new Object();
     private final Object insertRemoteFile2ArticleLock = new Object();
+    private final Object insertAttachmentLock = new Object();
 
     private SQLiteStatement insertCategory;
     private SQLiteStatement insertFeed;
     private SQLiteStatement insertArticle;
+    private SQLiteStatement updateArticle;
+    private SQLiteStatement insertArticleContent;
     private SQLiteStatement insertLabel;
+    private SQLiteStatement deleteLabel;
+    private SQLiteStatement insertOutbox;
     private SQLiteStatement insertRemoteFile;
     private SQLiteStatement insertRemoteFile2Article;
+    private SQLiteStatement insertAttachmentRemoteFile;
+    private SQLiteStatement insertAttachment;
+    private SQLiteStatement insertAttachmentRemoteFile2Article;
+    private SQLiteStatement deleteAttachments;
 
     private static boolean specialUpgradeSuccessful = false;
 
@@ -250,7 +335,6 @@ public class DBHelper {
                 // Test if DB is accessible, backup and delete if not
                 if (initialized) {
                     Cursor c = null;
-                    readLock(true);
                     try {
                         // Try to access the DB
                         c = getOpenHelper().getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE_CATEGORIES,
@@ -263,7 +347,7 @@ public class DBHelper {
                         Log.e(TAG, "Database was corrupted, creating a new one...", e);
                         closeDB();
                         File dbFile = context.getDatabasePath(DATABASE_NAME);
-                        if (dbFile.delete())
+                        if (deleteDBFiles(dbFile))
                             initializeDBHelper();
                         ErrorDialog
                                 .getInstance(
@@ -271,7 +355,6 @@ public class DBHelper {
                     } finally {
                         if (c != null && !c.isClosed())
                             c.close();
-                        readLock(false);
                     }
                 }
                 return null;
@@ -293,9 +376,6 @@ public class DBHelper {
         openHelper = new OpenHelper(context);
         SQLiteDatabase db = openHelper.getWritableDatabase();
 
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
-            db.setLockingEnabled(true);
-
         if (specialUpgradeSuccessful) {
             // Re-open DB for final usage:
             closeDB();
@@ -326,12 +406,28 @@ public class DBHelper {
             }.execute();
         }
 
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // There is no onConfigure() before Jelly Bean, so WAL can only be switched on after opening. The pragmas
+            // have to be set again afterwards since enabling WAL reopens the connection.
+            db.enableWriteAheadLogging();
+            OpenHelper.setPragmas(db);
+            db.setLockingEnabled(true);
+        }
+
         insertCategory = db.compileStatement(INSERT_CATEGORY);
         insertFeed = db.compileStatement(INSERT_FEED);
         insertArticle = db.compileStatement(INSERT_ARTICLE);
+        updateArticle = db.compileStatement(UPDATE_ARTICLE);
+        insertArticleContent = db.compileStatement(INSERT_ARTICLE_CONTENT);
         insertLabel = db.compileStatement(INSERT_LABEL);
+        deleteLabel = db.compileStatement(DELETE_LABEL);
+        insertOutbox = db.compileStatement(INSERT_OUTBOX);
         insertRemoteFile = db.compileStatement(INSERT_REMOTEFILE);
         insertRemoteFile2Article = db.compileStatement(INSERT_REMOTEFILE2ARTICLE);
+        insertAttachmentRemoteFile = db.compileStatement(INSERT_ATTACHMENT_REMOTEFILE);
+        insertAttachment = db.compileStatement(INSERT_ATTACHMENT);
+        insertAttachmentRemoteFile2Article = db.compileStatement(INSERT_ATTACHMENT_REMOTEFILE2ARTICLE);
+        deleteAttachments = db.compileStatement(DELETE_ATTACHMENTS);
 
         db.acquireReference();
         initialized = true;
@@ -348,12 +444,27 @@ public class DBHelper {
             if (getOpenHelper() != null) {
                 closeDB();
             }
-            return f.delete();
+            return deleteDBFiles(f);
         }
 
         return false;
     }
 
+    /**
+     * delete the DB file together with its write-ahead log, shared memory and journal files
+     *
+     * @param dbFile the DB file
+     * @return {@code true} if the DB file itself was deleted
+     */
+    private static boolean deleteDBFiles(File dbFile) {
+        for (String suffix : new String[]{"-wal", "-shm", "-journal"}) {
+            File f = new File(dbFile.getPath() + suffix);
+            if (f.exists() && !f.delete())
+                Log.w(TAG, "Couldn't delete " + f.getPath());
+        }
+        return dbFile.delete();
+    }
+
     private synchronized void closeDB() {
         writeLock(true);
         try {
@@ -379,6 +490,19 @@ public class DBHelper {
             super(context, DATABASE_NAME, null, DATABASE_VERSION);
         }
 
+        /**
+         * switch on WAL before the DB is created, upgraded or opened, so readers (e.g. the UI loaders) run in
+         * parallel to the sync writing to the DB and the pragmas in {@link #onOpen(SQLiteDatabase)} apply to WAL mode
+         *
+         * @param db DB to be used
+         */
+        @Override
+        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        public void onConfigure(SQLiteDatabase db) {
+            super.onConfigure(db);
+            db.enableWriteAheadLogging();
+        }
+
         /**
          * set wished DB modes on DB
          *
@@ -387,9 +511,26 @@ public class DBHelper {
         @Override
         public void onOpen(SQLiteDatabase db) {
             super.onOpen(db);
+            setPragmas(db);
+        }
+
+        private static void setPragmas(SQLiteDatabase db) {
             if (!db.isReadOnly()) {
                 // Enable foreign key constraints
                 db.execSQL("PRAGMA foreign_keys=ON;");
+
+                // In WAL mode a crash can only lose the last transactions, it can't corrupt the DB
+                db.execSQL("PRAGMA synchronous=NORMAL;");
+                // Cache up to 4000 pages and keep temporary tables and indices (ORDER BY, GROUP BY) in memory
+                db.execSQL("PRAGMA cache_size=4000;");
+                db.execSQL("PRAGMA temp_store=MEMORY;");
+                // Memory-map up to 32 MB of the DB file, ignored by SQLite versions older than 3.7.17
+                Cursor c = db.rawQuery("PRAGMA mmap_size=" + 32 * Utils.MB + ";", null);
+                try {
+                    c.moveToFirst();
+                } finally {
+                    c.close();
+                }
             }
         }
 
@@ -401,9 +542,13 @@ public class DBHelper {
             db.execSQL(CREATE_TABLE_CATEGORIES);
             db.execSQL(CREATE_TABLE_FEEDS);
             db.execSQL(CREATE_TABLE_ARTICLES);
+            db.execSQL(CREATE_TABLE_ARTICLE_CONTENT);
             db.execSQL(CREATE_TABLE_ARTICLES2LABELS);
-            db.execSQL(CREATE_TABLE_MARK);
+            db.execSQL(CREATE_TABLE_OUTBOX);
             createRemoteFilesSupportDBObjects(db);
+            createAttachments(db);
+            createArticleIndexes(db);
+            createCounterTriggers(db);
         }
 
         /**
@@ -594,7 +739,15 @@ public class DBHelper {
                     String sql = "UPDATE SQLITE_MASTER SET SQL = '%s' WHERE NAME = '%s';";
                     db.execSQL(String.format(sql, CREATE_TABLE_CATEGORIES, TABLE_CATEGORIES));
                     db.execSQL(String.format(sql, CREATE_TABLE_FEEDS, TABLE_FEEDS));
-                    db.execSQL(String.format(sql, CREATE_TABLE_ARTICLES, TABLE_ARTICLES));
+                    // Use the articles table as it was in version 58, the current one has a different column layout
+                    // @formatter:off
+                    String createArticles58 = "CREATE TABLE " + TABLE_ARTICLES
+                            + " (_id INTEGER PRIMARY KEY, feedId INTEGER, title TEXT, isUnread INTEGER,"
+                            + " articleUrl TEXT, articleCommentUrl TEXT, updateDate INTEGER, content TEXT,"
+                            + " attachments TEXT, isStarred INTEGER, isPublished INTEGER,"
+                            + " cachedImages INTEGER DEFAULT 0, articleLabels TEXT)";
+                    // @formatter:on
+                    db.execSQL(String.format(sql, createArticles58, TABLE_ARTICLES));
                     db.execSQL("PRAGMA writable_schema=0;");
 
                     if (createRemoteFilesSupportDBObjects(db)) {
@@ -628,13 +781,95 @@ public class DBHelper {
                 didUpgrade = true;
             }
 
+            if (oldVersion < 61) {
+                Log.i(TAG, String.format("Upgrading database from %s to 61.", oldVersion));
+                Log.i(TAG, String.format(" (Creating indexes on %s and %s)", TABLE_ARTICLES, TABLE_FEEDS));
+
+                createArticleIndexes(db);
+                didUpgrade = true;
+            }
+
+            if (oldVersion < 62) {
+                Log.i(TAG, String.format("Upgrading database from %s to 62.", oldVersion));
+                Log.i(TAG, String.format(" (Creating triggers for unread counters)"));
+
+                createCounterTriggers(db);
+                didUpgrade = true;
+            }
+
+            if (oldVersion < 63) {
+                Log.i(TAG, String.format("Upgrading database from %s to 63.", oldVersion));
+                Log.i(TAG, String.format(" (Moving attachments to table %s)", TABLE_ATTACHMENTS));
+
+                createAttachments(db);
+                migrateAttachments(db);
+                didUpgrade = true;
+            }
+
+            if (oldVersion < 64) {
+                // @formatter:off
+                String sql = CREATE_TABLE_ARTICLE_CONTENT;
+                String sql2 = "INSERT INTO " + TABLE_ARTICLE_CONTENT + " (_id, content)"
+                        + " SELECT _id, content FROM " + TABLE_ARTICLES
+                        + " WHERE content IS NOT NULL";
+                // The column can't be dropped, emptying it leaves only a NULL marker in each row
+                String sql3 = "UPDATE " + TABLE_ARTICLES + " SET content = NULL";
+                // @formatter:on
+
+                Log.i(TAG, String.format("Upgrading database from %s to 64.", oldVersion));
+                Log.i(TAG, String.format(" (Executing: %s", sql));
+                Log.i(TAG, String.format(" (Executing: %s", sql2));
+                Log.i(TAG, String.format(" (Executing: %s", sql3));
+
+                db.execSQL(sql);
+                db.execSQL(sql2);
+                db.execSQL(sql3);
+                didUpgrade = true;
+            }
+
+            if (oldVersion < 65) {
+                Log.i(TAG, String.format("Upgrading database from %s to 65.", oldVersion));
+                Log.i(TAG, String.format(" (Moving unsynchronized states from table %s to table %s)", TABLE_MARK,
+                        TABLE_OUTBOX));
+
+                db.execSQL(CREATE_TABLE_OUTBOX);
+                migrateMarked(db);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_MARK);
+                didUpgrade = true;
+            }
+
+            if (oldVersion < 66) {
+                Log.i(TAG, String.format("Upgrading database from %s to 66.", oldVersion));
+                Log.i(TAG, " (Creating index on the articles of remote files)");
+
+                createArticleIndexes(db);
+                didUpgrade = true;
+            }
+
+            if (oldVersion < 67) {
+                Log.i(TAG, String.format("Upgrading database from %s to 67.", oldVersion));
+                Log.i(TAG, String.format(" (Counting the references to remote files in table %s)",
+                        TABLE_REMOTEFILES));
+
+                // The table is created with the column when upgrading from versions before 53
+                if (!hasColumn(db, TABLE_REMOTEFILES, "refcount"))
+                    db.execSQL("ALTER TABLE " + TABLE_REMOTEFILES + " ADD COLUMN refcount INTEGER DEFAULT 0");
+                db.execSQL("UPDATE " + TABLE_REMOTEFILES + " SET refcount = (SELECT COUNT(*) FROM "
+                        + TABLE_REMOTEFILE2ARTICLE + " WHERE remotefileId = " + TABLE_REMOTEFILES + ".id)");
+                createRemotefileRefcount(db);
+                didUpgrade = true;
+            }
+
             if (!didUpgrade) {
                 Log.i(TAG, "Upgrading database, this will drop tables and recreate.");
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_CATEGORIES);
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_FEEDS);
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLES);
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_MARK);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_OUTBOX);
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_REMOTEFILES);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_ATTACHMENTS);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_ARTICLE_CONTENT);
                 onCreate(db);
             }
 
@@ -651,6 +886,7 @@ public class DBHelper {
             try {
                 createRemotefiles(db);
                 createRemotefiles2Articles(db);
+                createRemotefileRefcount(db);
                 createRemotefilesView(db);
                 success = true;
             } catch (SQLException e) {
@@ -678,7 +914,10 @@ public class DBHelper {
                     // (set automatically by triggers)
                     + " updateDate INTEGER,"
                     // boolean flag determining if the file is locally stored
-                    + " cached INTEGER DEFAULT 0)");
+                    + " cached INTEGER DEFAULT 0,"
+                    // number of articles referencing the file
+                    // (maintained by triggers on remotefile2article)
+                    + " refcount INTEGER DEFAULT 0)");
 
             // index for quiicker search by by URL
             db.execSQL("DROP INDEX IF EXISTS idx_remotefiles_by_url");
@@ -696,16 +935,6 @@ public class DBHelper {
                     + "     WHERE id = new.id;"
                     + "   END");
 
-            // sets last change unix timestamp after row update
-            db.execSQL("DROP TRIGGER IF EXISTS update_remotefiles_lastchanged");
-            db.execSQL("CREATE TRIGGER IF NOT EXISTS update_remotefiles_lastchanged AFTER UPDATE"
-                    + " ON " + TABLE_REMOTEFILES
-                    + "   BEGIN"
-                    + "     UPDATE " + TABLE_REMOTEFILES
-                    + "       SET updateDate = strftime('%s', 'now')"
-                    + "     WHERE id = new.id;"
-                    + "   END");
-
             // @formatter:on
         }
 
@@ -755,6 +984,84 @@ public class DBHelper {
             // @formatter:on
         }
 
+        /**
+         * create the triggers which count the articles referencing each remote file, so files which aren't used
+         * anymore are found with the index on "refcount" instead of comparing the whole linking table. Also creates the
+         * trigger which sets the last change of remote files, it ignores changes of the count.
+         *
+         * @param db current database
+         */
+        private void createRemotefileRefcount(SQLiteDatabase db) {
+            // @formatter:off
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_remotefiles_refcount"
+                    + " ON " + TABLE_REMOTEFILES
+                    + " (refcount)");
+
+            // sets last change unix timestamp after row update, a changed reference count is no change of the file
+            db.execSQL("DROP TRIGGER IF EXISTS update_remotefiles_lastchanged");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS update_remotefiles_lastchanged AFTER UPDATE"
+                    + " OF url, length, ext, cached"
+                    + " ON " + TABLE_REMOTEFILES
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_REMOTEFILES
+                    + "       SET updateDate = strftime('%s', 'now')"
+                    + "     WHERE id = new.id;"
+                    + "   END");
+
+            db.execSQL("DROP TRIGGER IF EXISTS insert_remotefile2article_refcount");
+            db.execSQL("CREATE TRIGGER insert_remotefile2article_refcount AFTER INSERT"
+                    + " ON " + TABLE_REMOTEFILE2ARTICLE
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_REMOTEFILES
+                    + "       SET refcount = refcount + 1"
+                    + "     WHERE id = new.remotefileId;"
+                    + "   END");
+
+            db.execSQL("DROP TRIGGER IF EXISTS delete_remotefile2article_refcount");
+            db.execSQL("CREATE TRIGGER delete_remotefile2article_refcount AFTER DELETE"
+                    + " ON " + TABLE_REMOTEFILE2ARTICLE
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_REMOTEFILES
+                    + "       SET refcount = refcount - 1"
+                    + "     WHERE id = old.remotefileId;"
+                    + "   END");
+
+            db.execSQL("DROP TRIGGER IF EXISTS update_remotefile2article_refcount");
+            db.execSQL("CREATE TRIGGER update_remotefile2article_refcount AFTER UPDATE"
+                    + " OF remotefileId"
+                    + " ON " + TABLE_REMOTEFILE2ARTICLE
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_REMOTEFILES
+                    + "       SET refcount = refcount - 1"
+                    + "     WHERE id = old.remotefileId;"
+                    + "     UPDATE " + TABLE_REMOTEFILES
+                    + "       SET refcount = refcount + 1"
+                    + "     WHERE id = new.remotefileId;"
+                    + "   END");
+            // @formatter:on
+        }
+
+        /**
+         * @param db     current database
+         * @param table  the table
+         * @param column the column
+         * @return {@code true} if the table has a column with the given name
+         */
+        private boolean hasColumn(SQLiteDatabase db, String table, String column) {
+            Cursor c = null;
+            try {
+                c = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+                while (c.moveToNext()) {
+                    if (column.equals(c.getString(c.getColumnIndex("name"))))
+                        return true;
+                }
+                return false;
+            } finally {
+                if (c != null && !c.isClosed())
+                    c.close();
+            }
+        }
+
         private void createRemotefilesView(SQLiteDatabase db) {
             // @formatter:off
             // represents importance of cached files
@@ -776,6 +1083,228 @@ public class DBHelper {
             // @formatter:on
         }
 
+        private void createAttachments(SQLiteDatabase db) {
+            // @formatter:off
+            // attachments of articles, the URLs are stored only once in the remote files table
+            db.execSQL("CREATE TABLE IF NOT EXISTS "
+                    + TABLE_ATTACHMENTS
+                    // ID of article
+                    + " (articleId INTEGER"
+                    + "   REFERENCES " + TABLE_ARTICLES + "(_id)"
+                    + "     ON DELETE CASCADE,"
+                    // ID of remote file
+                    + " remotefileId INTEGER"
+                    + "   REFERENCES " + TABLE_REMOTEFILES + "(id)"
+                    + "     ON DELETE CASCADE,"
+                    + " PRIMARY KEY(articleId, remotefileId))");
+
+            // deleting remote files cascades to the attachments referencing them
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_attachments_remotefile"
+                    + " ON " + TABLE_ATTACHMENTS
+                    + " (remotefileId)");
+            // @formatter:on
+        }
+
+        /**
+         * move the attachments from the semicolon-separated column "attachments" of the articles table to the
+         * attachments table, the old column can't be dropped in SQLite so it is only emptied
+         *
+         * @param db current database
+         */
+        private void migrateAttachments(SQLiteDatabase db) {
+            SQLiteStatement insertFile = db.compileStatement(INSERT_ATTACHMENT_REMOTEFILE);
+            SQLiteStatement insertAtt = db.compileStatement(INSERT_ATTACHMENT);
+            SQLiteStatement insertLink = db.compileStatement(INSERT_ATTACHMENT_REMOTEFILE2ARTICLE);
+            Cursor c = null;
+            try {
+                c = db.query(TABLE_ARTICLES, new String[]{"_id", "attachments"}, "attachments IS NOT NULL AND "
+                        + "attachments != ''", null, null, null, null);
+                while (c.moveToNext()) {
+                    long articleId = c.getLong(0);
+                    for (String url : c.getString(1).split(";")) {
+                        if (url.length() > 0)
+                            insertAttachment(insertFile, insertAtt, insertLink, articleId, url);
+                    }
+                }
+            } finally {
+                if (c != null && !c.isClosed())
+                    c.close();
+                insertFile.close();
+                insertAtt.close();
+                insertLink.close();
+            }
+
+            ContentValues cv = new ContentValues(1);
+            cv.putNull("attachments");
+            db.update(TABLE_ARTICLES, cv, null, null);
+        }
+
+        /**
+         * copy the unsynchronized states of the old mark table to the outbox, the notes are queued after the states
+         *
+         * @param db current database
+         */
+        private void migrateMarked(SQLiteDatabase db) {
+            // @formatter:off
+            String[] marks = new String[]{MARK_STAR, MARK_PUBLISH, MARK_READ};
+            int[] fields = new int[]{StateOutbox.FIELD_STARRED, StateOutbox.FIELD_PUBLISHED, StateOutbox.FIELD_UNREAD};
+            for (int i = 0; i < marks.length; i++) {
+                db.execSQL("INSERT OR REPLACE INTO " + TABLE_OUTBOX
+                        + " (articleId, field, state)"
+                        + " SELECT id, " + fields[i] + ", " + marks[i] + " FROM " + TABLE_MARK
+                        + " WHERE " + marks[i] + " IS NOT NULL");
+            }
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_OUTBOX
+                    + " (articleId, field, state, data)"
+                    + " SELECT id, " + StateOutbox.FIELD_NOTE + ", 1, " + MARK_NOTE + " FROM " + TABLE_MARK
+                    + " WHERE " + MARK_NOTE + " IS NOT NULL AND " + MARK_NOTE + " != ''");
+            // @formatter:on
+        }
+
+        /**
+         * create indexes matching the access paths of headline lists, unread counters and purging, without them
+         * every one of these queries results in a full scan of the articles table
+         *
+         * @param db current database
+         */
+        private void createArticleIndexes(SQLiteDatabase db) {
+            // @formatter:off
+            // headlines and unread count of a single feed, calculateCounters() (GROUP BY feedId)
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_articles_feed_unread_updated"
+                    + " ON " + TABLE_ARTICLES
+                    + " (feedId, isUnread, updateDate)");
+
+            // "All articles" and "Fresh articles", markRead(VCAT_ALL), image cache
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_articles_unread_updated"
+                    + " ON " + TABLE_ARTICLES
+                    + " (isUnread, updateDate)");
+
+            // "Starred articles"
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_articles_starred_updated"
+                    + " ON " + TABLE_ARTICLES
+                    + " (isStarred, updateDate)");
+
+            // "Published articles" and getExpiredArticleIds() (isPublished=0 AND isStarred=0 ORDER BY updateDate)
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_articles_published_starred_updated"
+                    + " ON " + TABLE_ARTICLES
+                    + " (isPublished, isStarred, updateDate)");
+
+            // articles of a category (feedId IN (SELECT _id FROM feeds WHERE categoryId=?))
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_feeds_category"
+                    + " ON " + TABLE_FEEDS
+                    + " (categoryId)");
+
+            // remote files of articles, deleteArticles() (articleId IN (...))
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_remotefile2article_article"
+                    + " ON " + TABLE_REMOTEFILE2ARTICLE
+                    + " (articleId)");
+            // @formatter:on
+        }
+
+        /**
+         * create triggers which keep the unread counters of feeds and categories up to date whenever articles or
+         * feeds change, so a full recount with calculateCounters() is only necessary to repair the counters after
+         * the feeds have been replaced by the values from the server
+         *
+         * @param db current database
+         */
+        private void createCounterTriggers(SQLiteDatabase db) {
+            // @formatter:off
+            // virtual categories counted directly from the article: all (-4), starred (-1) and published (-2),
+            // "fresh" depends on the current time and is updated by updateFreshCounter()
+            String decrementOld = "     UPDATE " + TABLE_CATEGORIES
+                    + "       SET unread = unread - 1"
+                    + "     WHERE old.isUnread > 0"
+                    + "       AND (_id = " + Data.VCAT_ALL
+                    + "         OR (_id = " + Data.VCAT_STAR + " AND old.isStarred > 0)"
+                    + "         OR (_id = " + Data.VCAT_PUB + " AND old.isPublished > 0));";
+            String incrementNew = "     UPDATE " + TABLE_CATEGORIES
+                    + "       SET unread = unread + 1"
+                    + "     WHERE new.isUnread > 0"
+                    + "       AND (_id = " + Data.VCAT_ALL
+                    + "         OR (_id = " + Data.VCAT_STAR + " AND new.isStarred > 0)"
+                    + "         OR (_id = " + Data.VCAT_PUB + " AND new.isPublished > 0));";
+
+            db.execSQL("DROP TRIGGER IF EXISTS insert_articles_counters");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS insert_articles_counters AFTER INSERT"
+                    + " ON " + TABLE_ARTICLES
+                    + " WHEN new.isUnread > 0"
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_FEEDS
+                    + "       SET unread = unread + 1"
+                    + "     WHERE _id = new.feedId;"
+                    + incrementNew
+                    + "   END");
+
+            db.execSQL("DROP TRIGGER IF EXISTS delete_articles_counters");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS delete_articles_counters AFTER DELETE"
+                    + " ON " + TABLE_ARTICLES
+                    + " WHEN old.isUnread > 0"
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_FEEDS
+                    + "       SET unread = unread - 1"
+                    + "     WHERE _id = old.feedId;"
+                    + decrementOld
+                    + "   END");
+
+            // only fires if the article was or is unread and one of the counted properties actually changed
+            db.execSQL("DROP TRIGGER IF EXISTS update_articles_counters");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS update_articles_counters AFTER UPDATE"
+                    + " OF isUnread, isStarred, isPublished, feedId"
+                    + " ON " + TABLE_ARTICLES
+                    + " WHEN (old.isUnread > 0) != (new.isUnread > 0)"
+                    + "   OR ((old.isUnread > 0 OR new.isUnread > 0)"
+                    + "     AND (old.feedId != new.feedId"
+                    + "       OR (old.isStarred > 0) != (new.isStarred > 0)"
+                    + "       OR (old.isPublished > 0) != (new.isPublished > 0)))"
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_FEEDS
+                    + "       SET unread = unread - 1"
+                    + "     WHERE old.isUnread > 0 AND _id = old.feedId;"
+                    + "     UPDATE " + TABLE_FEEDS
+                    + "       SET unread = unread + 1"
+                    + "     WHERE new.isUnread > 0 AND _id = new.feedId;"
+                    + decrementOld
+                    + incrementNew
+                    + "   END");
+
+            // real categories (including "uncategorized" with ID 0) contain the sum of their feeds
+            db.execSQL("DROP TRIGGER IF EXISTS insert_feeds_counters");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS insert_feeds_counters AFTER INSERT"
+                    + " ON " + TABLE_FEEDS
+                    + " WHEN new.categoryId >= 0 AND new.unread != 0"
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_CATEGORIES
+                    + "       SET unread = unread + new.unread"
+                    + "     WHERE _id = new.categoryId;"
+                    + "   END");
+
+            db.execSQL("DROP TRIGGER IF EXISTS delete_feeds_counters");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS delete_feeds_counters AFTER DELETE"
+                    + " ON " + TABLE_FEEDS
+                    + " WHEN old.categoryId >= 0 AND old.unread != 0"
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_CATEGORIES
+                    + "       SET unread = unread - old.unread"
+                    + "     WHERE _id = old.categoryId;"
+                    + "   END");
+
+            db.execSQL("DROP TRIGGER IF EXISTS update_feeds_counters");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS update_feeds_counters AFTER UPDATE"
+                    + " OF unread, categoryId"
+                    + " ON " + TABLE_FEEDS
+                    + " WHEN old.unread != new.unread OR old.categoryId != new.categoryId"
+                    + "   BEGIN"
+                    + "     UPDATE " + TABLE_CATEGORIES
+                    + "       SET unread = unread - old.unread"
+                    + "     WHERE old.categoryId >= 0 AND _id = old.categoryId;"
+                    + "     UPDATE " + TABLE_CATEGORIES
+                    + "       SET unread = unread + new.unread"
+                    + "     WHERE new.categoryId >= 0 AND _id = new.categoryId;"
+                    + "   END");
+            // @formatter:on
+        }
+
     }
 
     // *******| INSERT |*******************************************************************
@@ -795,18 +1324,70 @@ public class DBHelper {
         }
     }
 
-    void insertCategories(Set<Category> set) {
+    /**
+     * bring the stored categories in line with the given ones, only new, changed and (if requested) missing categories
+     * are written
+     *
+     * @param set           the categories
+     * @param deleteMissing delete stored real categories (except "uncategorized") which are not in the given set
+     * @return {@code true} if anything was changed
+     */
+    boolean updateCategories(Set<Category> set, boolean deleteMissing) {
         if (!isDBAvailable() || set == null)
-            return;
+            return false;
 
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         db.beginTransaction();
         try {
-            for (Category c : set) {
-                insertCategory(c.id, c.title, c.unread);
+            Map<Integer, Category> stored = new HashMap<>();
+            Cursor c = null;
+            try {
+                c = db.query(TABLE_CATEGORIES, null, null, null, null, null, null);
+                while (c.moveToNext()) {
+                    Category category = handleCategoryCursor(c);
+                    stored.put(category.id, category);
+                }
+            } finally {
+                if (c != null && !c.isClosed())
+                    c.close();
+            }
+
+            boolean changed = false;
+            for (Category category : set) {
+                Category old = stored.remove(category.id);
+                String title = category.title == null ? "" : category.title;
+                if (old == null) {
+                    insertCategory(category.id, title, category.unread);
+                    changed = true;
+                } else if (!title.equals(old.title) || category.unread != old.unread) {
+                    ContentValues cv = new ContentValues(2);
+                    cv.put("title", title);
+                    cv.put("unread", category.unread);
+                    db.update(TABLE_CATEGORIES, cv, "_id=?", new String[]{String.valueOf(category.id)});
+                    changed = true;
+                }
+            }
+
+            if (deleteMissing) {
+                Set<Integer> missing = new HashSet<>();
+                for (Integer id : stored.keySet()) {
+                    if (id > 0)
+                        missing.add(id);
+                }
+                if (!missing.isEmpty()) {
+                    TempIdSet ids = TempIdSet.create(db, missing);
+                    try {
+                        db.delete(TABLE_CATEGORIES, "_id IN " + TempIdSet.SELECT, null);
+                    } finally {
+                        ids.close();
+                    }
+                    changed = true;
+                }
             }
+
             db.setTransactionSuccessful();
+            return changed;
         } finally {
             db.endTransaction();
             writeLock(false);
@@ -832,18 +1413,66 @@ public class DBHelper {
         }
     }
 
-    void insertFeeds(Set<Feed> set) {
+    /**
+     * bring the stored feeds in line with the given ones, only new, changed and missing feeds are written. The unread
+     * counters of the categories follow through the feed triggers.
+     *
+     * @param set all feeds
+     * @return {@code true} if anything was changed
+     */
+    boolean updateFeeds(Set<Feed> set) {
         if (!isDBAvailable() || set == null)
-            return;
+            return false;
 
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         db.beginTransaction();
         try {
+            Map<Integer, Feed> stored = new HashMap<>();
+            Cursor c = null;
+            try {
+                c = db.query(TABLE_FEEDS, null, null, null, null, null, null);
+                while (c.moveToNext()) {
+                    Feed feed = handleFeedCursor(c);
+                    stored.put(feed.id, feed);
+                }
+            } finally {
+                if (c != null && !c.isClosed())
+                    c.close();
+            }
+
+            boolean changed = false;
             for (Feed f : set) {
-                insertFeed(f.id, f.categoryId, f.title, f.url, f.unread);
+                Feed old = stored.remove(f.id);
+                String title = f.title == null ? "" : f.title;
+                String url = f.url == null ? "" : f.url;
+                if (old == null) {
+                    insertFeed(f.id, f.categoryId, title, url, f.unread);
+                    changed = true;
+                } else if (f.categoryId != old.categoryId || !title.equals(old.title) || !url.equals(old.url)
+                        || f.unread != old.unread) {
+                    ContentValues cv = new ContentValues(4);
+                    cv.put("categoryId", f.categoryId);
+                    cv.put("title", title);
+                    cv.put("url", url);
+                    cv.put("unread", f.unread);
+                    db.update(TABLE_FEEDS, cv, "_id=?", new String[]{String.valueOf(f.id)});
+                    changed = true;
+                }
+            }
+
+            if (!stored.isEmpty()) {
+                TempIdSet ids = TempIdSet.create(db, stored.keySet());
+                try {
+                    db.delete(TABLE_FEEDS, "_id IN " + TempIdSet.SELECT, null);
+                } finally {
+                    ids.close();
+                }
+                changed = true;
             }
+
             db.setTransactionSuccessful();
+            return changed;
         } finally {
             db.endTransaction();
             writeLock(false);
@@ -853,46 +1482,145 @@ public class DBHelper {
     private void insertArticleIntern(Article a) {
         if (a.title == null)
             a.title = "";
-        if (a.content == null)
-            a.content = "";
         if (a.url == null)
             a.url = "";
         if (a.commentUrl == null)
             a.commentUrl = "";
         if (a.updated == null)
             a.updated = new Date();
-        if (a.attachments == null)
-            a.attachments = new LinkedHashSet<>();
         if (a.labels == null)
             a.labels = new LinkedHashSet<>();
         if (a.author == null)
             a.author = "";
 
-        // articleLabels
+        String title = StringSupport.decodeHtml(a.title);
+        String labels = Utils.separateItems(a.labels, "---");
+        // Articles received without content (or attachments) keep the ones already stored, if there are none the
+        // content is fetched by the ArticleContentResolver when it is needed
+        byte[] compressedContent = (a.content != null) ? ContentCompression.compress(a.content) : null;
+
         long retId;
+        boolean updated;
         synchronized (insertArticleLock) {
-            insertArticle.bindLong(1, a.id);
-            insertArticle.bindLong(2, a.feedId);
-            insertArticle.bindString(3, Html.fromHtml(a.title).toString());
-            insertArticle.bindLong(4, (a.isUnread ? 1 : 0));
-            insertArticle.bindString(5, a.url);
-            insertArticle.bindString(6, a.commentUrl);
-            insertArticle.bindLong(7, a.updated.getTime());
-            insertArticle.bindString(8, a.content);
-            insertArticle.bindString(9, Utils.separateItems(a.attachments, ";"));
-            insertArticle.bindLong(10, (a.isStarred ? 1 : 0));
-            insertArticle.bindLong(11, (a.isPublished ? 1 : 0));
-            insertArticle.bindLong(12, a.id); // ID again for the where-clause
-            insertArticle.bindString(13, Utils.separateItems(a.labels, "---"));
-            insertArticle.bindString(14, a.author);
+            // Update existing article first, insert only if nothing was updated
+            bindArticle(updateArticle, 1, a, title, labels);
+            updateArticle.bindLong(11, a.id);
+            updated = updateArticle.executeUpdateDelete() > 0;
+            retId = updated ? a.id : -1;
+
+            if (!updated) {
+                insertArticle.bindLong(1, a.id);
+                bindArticle(insertArticle, 2, a, title, labels);
+                retId = insertArticle.executeInsert();
+            }
 
-            if (!isDBAvailable())
-                return;
-            retId = insertArticle.executeInsert();
+            if (retId != -1 && a.content != null)
+                insertArticleContentIntern(a.id, a.content, compressedContent);
         }
 
-        if (retId != -1)
+        if (retId != -1) {
             insertLabels(a.id, a.labels);
+            if (a.attachments != null)
+                insertAttachments(a.id, a.attachments, updated);
+        }
+    }
+
+    private void insertArticleContentIntern(int articleId, String content, byte[] compressedContent) {
+        insertArticleContent.bindLong(1, articleId);
+        if (compressedContent != null)
+            insertArticleContent.bindBlob(2, compressedContent);
+        else
+            insertArticleContent.bindString(2, content);
+        insertArticleContent.executeInsert();
+    }
+
+    /**
+     * store only the content and the attachments of articles which are already stored. Their states and labels are
+     * left alone, so the copy from the server can't overwrite a state the user changed in the meantime. Articles
+     * which aren't stored (anymore) are ignored.
+     *
+     * @param articles the articles with their content
+     */
+    void insertArticleContents(Collection<Article> articles) {
+        if (!isDBAvailable() || articles == null || articles.isEmpty())
+            return;
+
+        SQLiteDatabase db = getOpenHelper().getWritableDatabase();
+        writeLock(true);
+        db.beginTransaction();
+        try {
+            SQLiteStatement countArticle = db.compileStatement(COUNT_ARTICLE);
+            try {
+                for (Article a : articles) {
+                    if (a.content == null)
+                        continue;
+                    countArticle.bindLong(1, a.id);
+                    if (countArticle.simpleQueryForLong() == 0)
+                        continue;
+
+                    byte[] compressedContent = ContentCompression.compress(a.content);
+                    synchronized (insertArticleLock) {
+                        insertArticleContentIntern(a.id, a.content, compressedContent);
+                    }
+                    if (a.attachments != null)
+                        insertAttachments(a.id, a.attachments, true);
+                }
+            } finally {
+                countArticle.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writeLock(false);
+        }
+    }
+
+    /**
+     * store the attachments of an article, existing attachments of updated articles are replaced
+     */
+    private void insertAttachments(int articleId, Set<String> attachments, boolean replace) {
+        synchronized (insertAttachmentLock) {
+            if (replace) {
+                deleteAttachments.bindLong(1, articleId);
+                deleteAttachments.executeUpdateDelete();
+            }
+            for (String url : attachments) {
+                if (url != null && url.length() > 0)
+                    insertAttachment(insertAttachmentRemoteFile, insertAttachment, insertAttachmentRemoteFile2Article,
+                            articleId, url);
+            }
+        }
+    }
+
+    private static void insertAttachment(SQLiteStatement insertFile, SQLiteStatement insertAtt,
+            SQLiteStatement insertLink, long articleId, String url) {
+        insertFile.bindString(1, url);
+        insertFile.executeInsert();
+
+        insertAtt.bindLong(1, articleId);
+        insertAtt.bindString(2, url);
+        insertAtt.executeInsert();
+
+        insertLink.bindLong(1, articleId);
+        insertLink.bindString(2, url);
+        insertLink.executeInsert();
+    }
+
+    /**
+     * bind all values of the given article except the ID and the content to the statement, starting at the given
+     * index
+     */
+    private static void bindArticle(SQLiteStatement stmt, int index, Article a, String title, String labels) {
+        stmt.bindLong(index, a.feedId);
+        stmt.bindString(index + 1, title);
+        stmt.bindLong(index + 2, (a.isUnread ? 1 : 0));
+        stmt.bindString(index + 3, a.url);
+        stmt.bindString(index + 4, a.commentUrl);
+        stmt.bindLong(index + 5, a.updated.getTime());
+        stmt.bindLong(index + 6, (a.isStarred ? 1 : 0));
+        stmt.bindLong(index + 7, (a.isPublished ? 1 : 0));
+        stmt.bindString(index + 8, labels);
+        stmt.bindString(index + 9, a.author);
     }
 
     void insertArticles(Collection<Article> articles) {
@@ -906,6 +1634,7 @@ public class DBHelper {
             for (Article a : articles) {
                 insertArticleIntern(a);
             }
+            updateFreshCounter(db);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -920,9 +1649,6 @@ public class DBHelper {
     }
 
     private void insertLabel(int articleId, Label label) {
-        if (!isDBAvailable())
-            return;
-
         if (label.id < -10) {
             synchronized (insertLabelLock) {
                 insertLabel.bindLong(1, articleId);
@@ -933,31 +1659,36 @@ public class DBHelper {
     }
 
     private void removeLabel(int articleId, Label label) {
-        if (!isDBAvailable())
-            return;
-
         if (label.id < -10) {
-            String[] args = new String[]{articleId + "", label.id + ""};
-
-            SQLiteDatabase db = getOpenHelper().getWritableDatabase();
-            writeLock(true);
-            try {
-                db.delete(TABLE_ARTICLES2LABELS, "articleId=? AND labelId=?", args);
-            } finally {
-                writeLock(false);
+            synchronized (insertLabelLock) {
+                deleteLabel.bindLong(1, articleId);
+                deleteLabel.bindLong(2, label.id);
+                deleteLabel.executeUpdateDelete();
             }
         }
     }
 
+    /**
+     * assign the label to the given articles or remove it from them, all in one transaction
+     */
     void insertLabels(Set<Integer> articleIds, Label label, boolean assign) {
-        if (!isDBAvailable())
+        if (!isDBAvailable() || articleIds.isEmpty())
             return;
 
-        for (Integer articleId : articleIds) {
-            if (assign)
-                insertLabel(articleId, label);
-            else
-                removeLabel(articleId, label);
+        SQLiteDatabase db = getOpenHelper().getWritableDatabase();
+        writeLock(true);
+        db.beginTransaction();
+        try {
+            for (Integer articleId : articleIds) {
+                if (assign)
+                    insertLabel(articleId, label);
+                else
+                    removeLabel(articleId, label);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writeLock(false);
         }
     }
 
@@ -1047,9 +1778,11 @@ public class DBHelper {
 
         where.append(" and isUnread>0 ");
 
+        // The IDs are selected and marked with the same condition in one transaction, so they can't differ
+        SQLiteDatabase db = getOpenHelper().getWritableDatabase();
+        writeLock(true);
+        db.beginTransaction();
         Cursor c = null;
-        SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         try {
             // select id from articles where categoryId in (...)
             c = db.query(TABLE_ARTICLES, new String[]{"_id"}, where.toString(), null, null, null, null);
@@ -1061,16 +1794,20 @@ public class DBHelper {
                     ret.add(c.getInt(0));
                 }
             }
+            c.close();
 
+            if (ret != null) {
+                ContentValues cv = new ContentValues(1);
+                cv.put(MARK_READ, 0);
+                db.update(TABLE_ARTICLES, cv, where.toString(), null);
+                updateFreshCounter(db);
+            }
+            db.setTransactionSuccessful();
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
-        }
-
-        if (ret != null && !ret.isEmpty()) {
-            // TODO Check access
-            markArticles(ret, "isUnread", 0);
+            db.endTransaction();
+            writeLock(false);
         }
 
         return ret;
@@ -1092,9 +1829,14 @@ public class DBHelper {
             writeLock(true);
             db.beginTransaction();
             try {
-                for (String ids : StringSupport.convertListToString(idList, 400)) {
-                    markArticles(ids, mark, state);
+                TempIdSet ids = TempIdSet.create(db, idList);
+                try {
+                    markArticles(TempIdSet.SELECT, mark, state);
+                } finally {
+                    ids.close();
                 }
+                if (MARK_READ.equals(mark))
+                    updateFreshCounter(db);
                 db.setTransactionSuccessful();
             } finally {
                 db.endTransaction();
@@ -1118,7 +1860,9 @@ public class DBHelper {
         writeLock(true);
         db.beginTransaction();
         try {
-            markArticles("" + id, mark, state);
+            markArticles("(" + id + ")", mark, state);
+            if (MARK_READ.equals(mark))
+                updateFreshCounter(db);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -1129,12 +1873,12 @@ public class DBHelper {
     /**
      * mark given property of given articles with given state
      *
-     * @param idList set of article IDs, which should be processed
-     * @param mark   mark to be set
-     * @param state  value for the mark
+     * @param ids   the article IDs in parentheses, either a list or a sub-query like {@link TempIdSet#SELECT}
+     * @param mark  mark to be set
+     * @param state value for the mark
      * @return the number of rows affected
      */
-    private int markArticles(String idList, String mark, int state) {
+    private int markArticles(String ids, String mark, int state) {
         int ret = 0;
         if (!isDBAvailable())
             return ret;
@@ -1145,8 +1889,8 @@ public class DBHelper {
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         try {
-            ret = db.update(TABLE_ARTICLES, cv, "_id IN (" + idList + ") AND ? != ?",
-                    new String[]{mark, String.valueOf(state)});
+            ret = db.update(TABLE_ARTICLES, cv, "_id IN " + ids + " AND " + mark + " != ?",
+                    new String[]{String.valueOf(state)});
         } finally {
             writeLock(false);
         }
@@ -1154,20 +1898,37 @@ public class DBHelper {
         return ret;
     }
 
-    void markUnsynchronizedStates(Collection<Integer> ids, String mark, int state) {
-        if (!isDBAvailable())
+    /**
+     * queue a state change of the given articles for synchronization with the server, a pending change of the same
+     * field (and label) of an article is replaced
+     *
+     * @param ids     article IDs
+     * @param field   one of the {@code FIELD_*} constants of {@link StateOutbox}
+     * @param labelId ID of the label if field is {@link StateOutbox#FIELD_LABEL}, {@code 0} otherwise
+     * @param state   the new state
+     * @param data    the note if field is {@link StateOutbox#FIELD_NOTE}, {@code null} otherwise
+     */
+    void queueStateChanges(Collection<Integer> ids, int field, int labelId, int state, String data) {
+        if (!isDBAvailable() || ids.isEmpty())
             return;
 
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         db.beginTransaction();
         try {
-            for (Integer id : ids) {
-                // First update, then insert. If row exists it gets updated and second call ignores it, else the second
-                // call inserts it.
-                db.execSQL(String.format("UPDATE %s SET %s=%s WHERE id=%s", TABLE_MARK, mark, state, id));
-                db.execSQL(String.format("INSERT OR IGNORE INTO %s (id, %s) VALUES (%s, %s)", TABLE_MARK, mark, id,
-                        state));
+            synchronized (insertOutboxLock) {
+                // Only the article ID differs between the rows
+                insertOutbox.bindLong(2, field);
+                insertOutbox.bindLong(3, labelId);
+                insertOutbox.bindLong(4, state);
+                if (data == null)
+                    insertOutbox.bindNull(5);
+                else
+                    insertOutbox.bindString(5, data);
+                for (Integer id : ids) {
+                    insertOutbox.bindLong(1, id);
+                    insertOutbox.executeInsert();
+                }
             }
             db.setTransactionSuccessful();
         } finally {
@@ -1176,24 +1937,26 @@ public class DBHelper {
         }
     }
 
-    // Special treatment for notes since the method markUnsynchronizedStates(...) doesn't support inserting any
-    // additional data.
-    void markUnsynchronizedNotes(Map<Integer, String> ids) {
-        if (!isDBAvailable())
+    /**
+     * drop pending state changes of the given field of the given articles, e.g. when the server got the same change
+     * in another way
+     *
+     * @param ids   article IDs
+     * @param field one of the {@code FIELD_*} constants of {@link StateOutbox}
+     */
+    void dequeueStateChanges(Collection<Integer> ids, int field) {
+        if (!isDBAvailable() || ids.isEmpty())
             return;
 
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         db.beginTransaction();
         try {
-            for (Integer id : ids.keySet()) {
-                String note = ids.get(id);
-                if (note == null || note.equals(""))
-                    continue;
-
-                ContentValues cv = new ContentValues(1);
-                cv.put(MARK_NOTE, note);
-                db.update(TABLE_MARK, cv, "id=" + id, null);
+            TempIdSet idSet = TempIdSet.create(db, ids);
+            try {
+                db.delete(TABLE_OUTBOX, "field=" + field + " AND articleId IN " + TempIdSet.SELECT, null);
+            } finally {
+                idSet.close();
             }
             db.setTransactionSuccessful();
         } finally {
@@ -1203,7 +1966,22 @@ public class DBHelper {
     }
 
     /**
-     * Set unread counters for feeds and categories according to real amount of unread articles.
+     * Set the unread counter of the virtual category "fresh articles". Unlike all other counters it depends on the
+     * current time and thus can't be maintained by the triggers on the articles table. Must be called while holding
+     * the write lock.
+     *
+     * @param db current database
+     */
+    private void updateFreshCounter(SQLiteDatabase db) {
+        long time = System.currentTimeMillis() - Controller.getInstance().getFreshArticleMaxAge();
+        db.execSQL("UPDATE " + TABLE_CATEGORIES + " SET unread=(SELECT count(*) FROM " + TABLE_ARTICLES
+                + " WHERE isUnread>0 AND updateDate>?) WHERE _id=" + Data.VCAT_FRESH, new Object[]{time});
+    }
+
+    /**
+     * Set unread counters for feeds and categories according to real amount of unread articles. The counters are
+     * maintained incrementally by triggers, so this full recount is only needed to repair them, e.g. after the feeds
+     * have been replaced by the values from the server.
      */
     void calculateCounters() {
         if (!isDBAvailable())
@@ -1313,153 +2091,193 @@ public class DBHelper {
         }
     }
 
-    void deleteCategories(boolean withVirtualCategories) {
-        if (!isDBAvailable())
-            return;
-
-        String wherePart = "";
-        if (!withVirtualCategories)
-            wherePart = "_id > 0";
-
-        SQLiteDatabase db = getOpenHelper().getWritableDatabase();
-        writeLock(true);
-        try {
-            db.delete(TABLE_CATEGORIES, wherePart, null);
-        } finally {
-            writeLock(false);
-        }
-    }
-
     /**
-     * delete all rows from feeds table
+     * the result of {@link #deleteArticles(Collection, boolean, boolean)}
      */
-    void deleteFeeds() {
-        if (!isDBAvailable())
-            return;
-
-        SQLiteDatabase db = getOpenHelper().getWritableDatabase();
-        writeLock(true);
-        try {
-            db.delete(TABLE_FEEDS, null, null);
-        } finally {
-            writeLock(false);
-        }
+    static class DeleteResult {
+        /** number of deleted articles */
+        int articles = 0;
+        /** size of the deleted article content */
+        long contentBytes = 0;
+        /** deleted remote files, their cached files still have to be deleted */
+        final List<RemoteFile> remoteFiles = new ArrayList<>();
     }
 
     /**
-     * delete articles and all its resources (e.g. remote files, labels etc.)
+     * delete the given articles and their resources (remote files which aren't referenced by other articles, labels,
+     * attachments and content) in one transaction. Remote files are deleted once their reference count drops to 0,
+     * this includes files which weren't referenced by any article before. The cached files of the deleted remote
+     * files are left to the caller, so the DB isn't locked while they are deleted.
+     * <p>
+     * The keep conditions are checked again within the transaction, an article which has been starred or published
+     * since it was selected is left alone, just like its resources.
      *
-     * @param whereClause the optional WHERE clause to apply when deleting.
-     *                    Passing null will delete all rows.
-     * @param whereArgs   You may include ?s in the where clause, which
-     *                    will be replaced by the values from whereArgs. The values
-     *                    will be bound as Strings.
-     * @return the number of rows affected if a whereClause is passed in, 0
-     * otherwise. To remove all rows and get a count pass "1" as the
-     * whereClause.
+     * @param articleIds    the articles, should be a small number so other writers aren't blocked for long
+     * @param keepStarred   if starred articles are kept
+     * @param keepPublished if published articles are kept
+     * @return the deleted articles and remote files
      */
-    private int safelyDeleteArticles(String whereClause, String[] whereArgs) {
-        int deletedCount = 0;
-
-        Collection<RemoteFile> rfs = getRemoteFilesForArticles(whereClause, whereArgs, true);
-        if (!rfs.isEmpty()) {
-            Set<Integer> rfIds = new HashSet<>(rfs.size());
-            for (RemoteFile rf : rfs) {
-                rfIds.add(rf.id);
-                Controller.getInstance().getImageCache().getCacheFile(rf.url).delete();
-            }
-            deleteRemoteFiles(rfIds);
-        }
-
-        // @formatter:off
-        StringBuilder query = new StringBuilder();
-        query.append(
-                " articleId IN (").append(
-                "     SELECT _id").append(
-                "       FROM ").append(
-                TABLE_ARTICLES).append(
-                "       WHERE ").append(
-                whereClause).append(
-                " )");
-        // @formatter:on
+    DeleteResult deleteArticles(Collection<Integer> articleIds, boolean keepStarred, boolean keepPublished) {
+        DeleteResult ret = new DeleteResult();
+        if (!isDBAvailable() || articleIds.isEmpty())
+            return ret;
 
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         db.beginTransaction();
         try {
-            // first, delete article referencies from linking table to preserve foreign key constraint on the next step
-            db.delete(TABLE_REMOTEFILE2ARTICLE, query.toString(), whereArgs);
+            TempIdSet ids = TempIdSet.create(db, articleIds);
+            try {
+                if (keepStarred || keepPublished) {
+                    String keep;
+                    if (keepStarred && keepPublished)
+                        keep = "isStarred=1 OR isPublished=1";
+                    else if (keepStarred)
+                        keep = "isStarred=1";
+                    else
+                        keep = "isPublished=1";
+                    ids.removeAll("(SELECT _id FROM " + TABLE_ARTICLES + " WHERE " + keep + ")");
+                }
+
+                Cursor c = db.rawQuery("SELECT SUM(length(CAST(content AS BLOB))) FROM " + TABLE_ARTICLE_CONTENT
+                        + " WHERE _id IN " + TempIdSet.SELECT, null);
+                try {
+                    if (c.moveToFirst())
+                        ret.contentBytes = c.getLong(0);
+                } finally {
+                    c.close();
+                }
+
+                // Decrements the reference counts, the links would also prevent deleting the articles
+                db.delete(TABLE_REMOTEFILE2ARTICLE, "articleId IN " + TempIdSet.SELECT, null);
+
+                c = db.query(TABLE_REMOTEFILES, null, "refcount<=0", null, null, null, null);
+                try {
+                    while (c.moveToNext()) {
+                        ret.remoteFiles.add(handleRemoteFileCursor(c));
+                    }
+                } finally {
+                    c.close();
+                }
+
+                // Cascades to the attachments of these files
+                if (!ret.remoteFiles.isEmpty())
+                    db.delete(TABLE_REMOTEFILES, "refcount<=0", null);
 
-            // TODO Foreign-key constraint failed from purgeOrphanedArticles() and safelyDeleteArticles()
-            deletedCount = db.delete(TABLE_ARTICLES, whereClause, whereArgs);
-            purgeLabels();
+                db.delete(TABLE_ARTICLES2LABELS, "articleId IN " + TempIdSet.SELECT, null);
+
+                // Cascades to the content and the attachments
+                ret.articles = db.delete(TABLE_ARTICLES, "_id IN " + TempIdSet.SELECT, null);
+            } finally {
+                ids.close();
+            }
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
             writeLock(false);
         }
-
-        return deletedCount;
+        return ret;
     }
 
     /**
-     * Delete given amount of last updated articles from DB. Published and Starred articles are ignored
-     * so the configured limit is not an exact upper limit to the number of articles in the database.
+     * select the articles which exceed the given limits, the newest articles are kept
      *
-     * @param amountToPurge amount of articles to be purged
+     * @param feedId        only select articles of this feed, {@code null} to select articles of all feeds
+     * @param excludedFeeds feeds which neither count against the limits nor have articles selected, may be {@code
+     *                      null}
+     * @param maxArticles   number of articles to keep, 0 to keep all
+     * @param minUpdateDate articles updated before are selected regardless of their number, 0 to ignore the age
+     * @param keepStarred   if starred articles are kept in addition to the limits
+     * @param keepPublished if published articles are kept in addition to the limits
+     * @return IDs of the articles, the oldest last
      */
-    void purgeLastArticles(int amountToPurge) {
-        if (!isDBAvailable())
-            return;
-
-        long time = System.currentTimeMillis();
-        String query = "_id IN ( SELECT _id FROM " + TABLE_ARTICLES
-                + " WHERE isPublished=0 AND isStarred=0 ORDER BY updateDate DESC LIMIT -1 OFFSET "
-                + (Utils.ARTICLE_LIMIT - amountToPurge + ")");
+    Set<Integer> getExpiredArticleIds(Integer feedId, Collection<Integer> excludedFeeds, int maxArticles,
+            long minUpdateDate, boolean keepStarred, boolean keepPublished) {
+        Set<Integer> ret = new LinkedHashSet<>();
+        if (!isDBAvailable() || (maxArticles <= 0 && minUpdateDate <= 0))
+            return ret;
 
-        safelyDeleteArticles(query, null);
-        Log.d(TAG, "purgeLastArticles took " + (System.currentTimeMillis() - time) + "ms");
+        StringBuilder where = new StringBuilder("1");
+        List<String> args = new ArrayList<>();
+        if (keepPublished)
+            where.append(" AND isPublished=0");
+        if (keepStarred)
+            where.append(" AND isStarred=0");
+        if (feedId != null) {
+            where.append(" AND feedId=?");
+            args.add(String.valueOf(feedId));
+        } else if (excludedFeeds != null && !excludedFeeds.isEmpty()) {
+            where.append(" AND feedId NOT IN ").append(bindIds(excludedFeeds, args));
+        }
+
+        if (maxArticles > 0) {
+            ret.addAll(getArticleIds(where + " ORDER BY updateDate DESC LIMIT -1 OFFSET " + maxArticles,
+                    args.toArray(new String[args.size()])));
+        }
+        if (minUpdateDate > 0) {
+            List<String> ageArgs = new ArrayList<>(args);
+            ageArgs.add(String.valueOf(minUpdateDate));
+            ret.addAll(getArticleIds(where + " AND updateDate<? ORDER BY updateDate DESC",
+                    ageArgs.toArray(new String[ageArgs.size()])));
+        }
+        return ret;
     }
 
     /**
-     * delete articles, which belongs to non-existent feeds
+     * @return IDs of the articles of feeds which don't exist anymore
      */
-    void purgeOrphanedArticles() {
+    Set<Integer> getOrphanedArticleIds() {
+        Set<Integer> ret = new LinkedHashSet<>();
         if (!isDBAvailable())
-            return;
+            return ret;
 
-        long time = System.currentTimeMillis();
-        safelyDeleteArticles("feedId NOT IN (SELECT _id FROM " + TABLE_FEEDS + ")", null);
-        Log.d(TAG, "purgeOrphanedArticles took " + (System.currentTimeMillis() - time) + "ms");
+        ret.addAll(getArticleIds("feedId NOT IN (SELECT _id FROM " + TABLE_FEEDS + ")", null));
+        return ret;
     }
 
-    private void purgeLabels() {
-        if (!isDBAvailable())
-            return;
-
-        // @formatter:off
-        String idsArticles = "SELECT a2l.articleId FROM "
-                + TABLE_ARTICLES2LABELS + " AS a2l LEFT OUTER JOIN "
-                + TABLE_ARTICLES + " AS a"
-                + " ON a2l.articleId = a._id WHERE a._id IS null";
-
-        String idsFeeds = "SELECT a2l.labelId FROM "
-                + TABLE_ARTICLES2LABELS + " AS a2l LEFT OUTER JOIN "
-                + TABLE_FEEDS + " AS f"
-                + " ON a2l.labelId = f._id WHERE f._id IS null";
-        // @formatter:on
-
-        SQLiteDatabase db = getOpenHelper().getWritableDatabase();
-        writeLock(true);
+    private List<Integer> getArticleIds(String selection, String[] selectionArgs) {
+        List<Integer> ret = new ArrayList<>();
+        SQLiteDatabase db = getOpenHelper().getReadableDatabase();
+        Cursor c = null;
         try {
-            db.delete(TABLE_ARTICLES2LABELS, "articleId IN(" + idsArticles + ")", null);
-            db.delete(TABLE_ARTICLES2LABELS, "labelId IN(" + idsFeeds + ")", null);
+            c = db.rawQuery("SELECT _id FROM " + TABLE_ARTICLES + " WHERE " + selection, selectionArgs);
+            while (c.moveToNext()) {
+                ret.add(c.getInt(0));
+            }
         } finally {
-            writeLock(false);
+            if (c != null && !c.isClosed())
+                c.close();
+        }
+        return ret;
+    }
+
+    /**
+     * bind a short list of IDs to placeholders, a temporary {@link TempIdSet} is only worth it within a write
+     * transaction. SQLite accepts up to 999 placeholders per statement.
+     *
+     * @param ids  the IDs
+     * @param args the IDs are appended to these arguments
+     * @return the placeholders, e.g. {@code "(?,?,?)"}
+     */
+    private static String bindIds(Collection<Integer> ids, List<String> args) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Integer id : ids) {
+            if (sb.length() > 1)
+                sb.append(',');
+            sb.append('?');
+            args.add(String.valueOf(id));
         }
+        return sb.append(')').toString();
     }
 
-    void handlePurgeMarked(String idList, int minId, String vcat) {
+    /**
+     * reset the given mark of all articles with an ID greater than minId which are not in the given set
+     *
+     * @param ids   IDs of the articles which keep the mark
+     * @param minId only articles with a greater ID are changed
+     * @param vcat  the mark
+     */
+    void handlePurgeMarked(Set<Integer> ids, int minId, String vcat) {
         if (!isDBAvailable())
             return;
 
@@ -1469,12 +2287,23 @@ public class DBHelper {
 
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
+        db.beginTransaction();
         try {
-            int count = db.update(TABLE_ARTICLES, cv,
-                    vcat + ">0 AND _id>" + minId + " AND _id NOT IN (" + idList + ")", null);
+            int count;
+            TempIdSet idSet = TempIdSet.create(db, ids);
+            try {
+                count = db.update(TABLE_ARTICLES, cv,
+                        vcat + ">0 AND _id>" + minId + " AND _id NOT IN " + TempIdSet.SELECT, null);
+            } finally {
+                idSet.close();
+            }
+            if (MARK_READ.equals(vcat))
+                updateFreshCounter(db);
+            db.setTransactionSuccessful();
             long timeDiff = (System.currentTimeMillis() - time);
             Log.d(TAG, String.format("Marked %s articles %s=0 (%s ms)", count, vcat, timeDiff));
         } finally {
+            db.endTransaction();
             writeLock(false);
         }
     }
@@ -1482,21 +2311,39 @@ public class DBHelper {
     // *******| SELECT |*******************************************************************
 
     public Article getArticle(int id) {
+        return getArticle(id, true);
+    }
+
+    /**
+     * get the article with the given ID
+     *
+     * @param id          the article ID
+     * @param withContent if {@code false} the content of the article isn't read from the DB and left {@code null}
+     * @return the article or {@code null} if it doesn't exist
+     */
+    Article getArticle(int id, boolean withContent) {
         Article ret = null;
         if (!isDBAvailable())
             return null;
 
+        // @formatter:off
+        String sql = "SELECT a._id, a.feedId, a.title, a.isUnread, a.articleUrl, a.articleCommentUrl, a.updateDate,"
+                + (withContent ? " ac.content," : " NULL,")
+                + " a.isStarred, a.isPublished, a.articleLabels, a.author"
+                + " FROM " + TABLE_ARTICLES + " a"
+                + (withContent ? " LEFT OUTER JOIN " + TABLE_ARTICLE_CONTENT + " ac ON ac._id = a._id" : "")
+                + " WHERE a._id=?";
+        // @formatter:on
+
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
-            c = db.query(TABLE_ARTICLES, null, "_id=?", new String[]{id + ""}, null, null, null, null);
+            c = db.rawQuery(sql, new String[]{id + ""});
             if (c.moveToFirst())
                 ret = handleArticleCursor(c);
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
 
         return ret;
@@ -1517,7 +2364,6 @@ public class DBHelper {
         // @formatter:on
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.rawQuery(sql, null);
@@ -1534,7 +2380,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
     }
 
@@ -1544,7 +2389,6 @@ public class DBHelper {
             return ret;
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_FEEDS, null, "_id=?", new String[]{id + ""}, null, null, null, null);
@@ -1553,7 +2397,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
 
         return ret;
@@ -1565,7 +2408,6 @@ public class DBHelper {
             return ret;
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_CATEGORIES, null, "_id=?", new String[]{id + ""}, null, null, null, null);
@@ -1574,7 +2416,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
 
         return ret;
@@ -1583,6 +2424,7 @@ public class DBHelper {
     /**
      * get the map of article IDs to its update date from DB
      *
+     * @param ret           the map to fill, it is grown once to the number of rows before reading them
      * @param selection     A filter declaring which articles should be considered, formatted as an SQL WHERE clause
      *                      (excluding
      *                      the WHERE
@@ -1591,28 +2433,24 @@ public class DBHelper {
      *                      in
      *                      order
      *                      that they appear in the selection. The values will be bound as Strings.
-     * @return map of unread article IDs to its update date (may be {@code null})
+     * @return the given map filled with the article IDs and their update date
      */
-    @SuppressLint("UseSparseArrays")
-    public Map<Integer, Long> getArticleIdUpdatedMap(String selection, String[] selectionArgs) {
-        Map<Integer, Long> ret = null;
+    public IntLongHashMap getArticleIdUpdatedMap(IntLongHashMap ret, String selection, String[] selectionArgs) {
         if (!isDBAvailable())
-            return null;
+            return ret;
 
         Cursor c = null;
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         try {
             c = db.query(TABLE_ARTICLES, new String[]{"_id", "updateDate"}, selection, selectionArgs, null, null,
                     null);
-            ret = new HashMap<>(c.getCount());
+            ret.ensureCapacity(ret.size() + c.getCount());
             while (c.moveToNext()) {
                 ret.put(c.getInt(0), c.getLong(1));
             }
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
         return ret;
     }
@@ -1647,7 +2485,6 @@ public class DBHelper {
         }
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_FEEDS, null, where, null, null, null, "UPPER(title) ASC");
@@ -1659,7 +2496,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
     }
 
@@ -1668,7 +2504,6 @@ public class DBHelper {
             return new LinkedHashSet<>();
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_CATEGORIES, null, "_id>=0", null, null, null, "title ASC");
@@ -1680,7 +2515,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
     }
 
@@ -1735,7 +2569,6 @@ public class DBHelper {
         // Read count for given feed
         int ret = 0;
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_ARTICLES, new String[]{"count(*)"}, selection.toString(), selectionArgs, null, null,
@@ -1746,70 +2579,62 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
 
         return ret;
     }
 
-    @SuppressLint("UseSparseArrays")
-    Map<Integer, String> getMarked(String mark, int status) {
+    /**
+     * @return all pending state changes in the order they were made
+     */
+    List<StateOutbox.Change> getStateChanges() {
+        List<StateOutbox.Change> ret = new ArrayList<>();
         if (!isDBAvailable())
-            return new HashMap<>();
+            return ret;
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
-            c = db.query(TABLE_MARK, new String[]{"id", MARK_NOTE}, mark + "=" + status, null, null, null, null,
-                    null);
+            c = db.query(TABLE_OUTBOX, new String[]{"seq", "articleId", "field", "labelId", "state", "data"}, null,
+                    null, null, null, "seq");
 
-            Map<Integer, String> ret = new HashMap<>(c.getCount());
             while (c.moveToNext()) {
-                ret.put(c.getInt(0), c.getString(1));
+                ret.add(new StateOutbox.Change(c.getLong(0), c.getInt(1), c.getInt(2), c.getInt(3), c.getInt(4),
+                        c.getString(5)));
             }
             return ret;
 
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
     }
 
     /**
-     * remove specified mark in the temporary mark table for specified
-     * articles and then cleanup this table
+     * remove state changes after they have been sent to the server, changes which replaced them in the meantime are
+     * kept since they have a new sequence number
      *
-     * @param ids  article IDs, which mark should be reseted
-     * @param mark article mark to be reseted
+     * @param changes the sent changes
      */
-    void setMarked(Map<Integer, String> ids, String mark) {
-        if (!isDBAvailable())
+    void removeStateChanges(Collection<StateOutbox.Change> changes) {
+        if (!isDBAvailable() || changes.isEmpty())
             return;
 
+        List<Long> seqs = new ArrayList<>(changes.size());
+        for (StateOutbox.Change change : changes) {
+            seqs.add(change.seq);
+        }
+
         SQLiteDatabase db = getOpenHelper().getWritableDatabase();
         writeLock(true);
         db.beginTransaction();
         try {
-            ContentValues cv = new ContentValues(1);
-            for (String idList : StringSupport.convertListToString(ids.keySet(), 1000)) {
-                cv.putNull(mark);
-                db.update(TABLE_MARK, cv, "id IN(" + idList + ")", null);
-                db.delete(TABLE_MARK, "isUnread IS null AND isStarred IS null AND isPublished IS null", null);
-            }
-
-            // Insert notes afterwards and only if given note is not null
-            cv = new ContentValues(1);
-            for (Integer id : ids.keySet()) {
-                String note = ids.get(id);
-                if (note == null || note.equals(""))
-                    continue;
-
-                cv.put(MARK_NOTE, note);
-                db.update(TABLE_MARK, cv, "id=" + id, null);
+            TempIdSet seqSet = TempIdSet.create(db, seqs);
+            try {
+                db.delete(TABLE_OUTBOX, "seq IN " + TempIdSet.SELECT, null);
+            } finally {
+                seqSet.close();
             }
-
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -1829,16 +2654,25 @@ public class DBHelper {
                 c.getString(4),                     // articleUrl
                 c.getString(5),                     // articleCommentUrl
                 new Date(c.getLong(6)),             // updateDate
-                c.getString(7),                     // content
-                parseAttachments(c.getString(8)),   // attachments
-                (c.getInt(9) != 0),                 // isStarred
-                (c.getInt(10) != 0),                // isPublished
-                parseArticleLabels(c.getString(12)),// Labels
-                c.getString(13)                     // Author
+                readContent(c, 7),                  // content
+                null,                               // attachments, loaded with getAttachments() when needed
+                (c.getInt(8) != 0),                 // isStarred
+                (c.getInt(9) != 0),                 // isPublished
+                parseArticleLabels(c.getString(10)),// Labels
+                c.getString(11)                     // Author
         );
         // @formatter:on
     }
 
+    /**
+     * read the article content from the cursor, it is either stored as text or compressed as BLOB
+     */
+    private static String readContent(Cursor c, int index) {
+        if (c.getType(index) == Cursor.FIELD_TYPE_BLOB)
+            return ContentCompression.decompress(c.getBlob(index));
+        return c.getString(index);
+    }
+
     private static Feed handleFeedCursor(Cursor c) {
         // @formatter:off
         return new Feed(
@@ -1871,12 +2705,64 @@ public class DBHelper {
         // @formatter:on
     }
 
-    private static Set<String> parseAttachments(String att) {
+    /**
+     * @param ids article IDs, a handful like the articles around the opened one
+     * @return the IDs of those of the given articles which are stored without content
+     */
+    public Set<Integer> getArticleIdsWithoutContent(Set<Integer> ids) {
+        Set<Integer> ret = new LinkedHashSet<>();
+        if (!isDBAvailable() || ids.isEmpty())
+            return ret;
+
+        List<String> args = new ArrayList<>(ids.size());
+        // @formatter:off
+        String sql = "SELECT a._id FROM " + TABLE_ARTICLES + " a"
+                + " WHERE a._id IN " + bindIds(ids, args)
+                + " AND NOT EXISTS (SELECT 1 FROM " + TABLE_ARTICLE_CONTENT + " ac WHERE ac._id = a._id)";
+        // @formatter:on
+
+        SQLiteDatabase db = getOpenHelper().getReadableDatabase();
+        Cursor c = null;
+        try {
+            c = db.rawQuery(sql, args.toArray(new String[args.size()]));
+            while (c.moveToNext()) {
+                ret.add(c.getInt(0));
+            }
+        } finally {
+            if (c != null && !c.isClosed())
+                c.close();
+        }
+        return ret;
+    }
+
+    /**
+     * get the attachment URLs of the given article in the order they were delivered by the server
+     *
+     * @param articleId the article
+     * @return set of attachment URLs, empty if there are none
+     */
+    public Set<String> getAttachments(int articleId) {
         Set<String> ret = new LinkedHashSet<>();
-        if (att == null)
+        if (!isDBAvailable())
             return ret;
 
-        ret.addAll(Arrays.asList(att.split(";")));
+        // @formatter:off
+        String sql = "SELECT r.url FROM " + TABLE_ATTACHMENTS + " at, " + TABLE_REMOTEFILES + " r"
+                + " WHERE at.remotefileId=r.id AND at.articleId=?"
+                + " ORDER BY at.rowid";
+        // @formatter:on
+
+        SQLiteDatabase db = getOpenHelper().getReadableDatabase();
+        Cursor c = null;
+        try {
+            c = db.rawQuery(sql, new String[]{String.valueOf(articleId)});
+            while (c.moveToNext()) {
+                ret.add(c.getString(0));
+            }
+        } finally {
+            if (c != null && !c.isClosed())
+                c.close();
+        }
         return ret;
     }
 
@@ -1909,30 +2795,50 @@ public class DBHelper {
         return ret;
     }
 
+    @SuppressLint("UseSparseArrays")
     public ArrayList<Article> queryArticlesForImagecache() {
         if (!isDBAvailable())
             return null;
 
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
-            c = db.query(TABLE_ARTICLES, new String[]{"_id", "content", "attachments"},
-                    "cachedImages IS NULL AND isUnread>0", null, null, null, null, "1000");
+            String where = "cachedImages IS NULL AND isUnread>0";
+            // @formatter:off
+            c = db.rawQuery("SELECT a._id, ac.content FROM " + TABLE_ARTICLES + " a"
+                    + " LEFT OUTER JOIN " + TABLE_ARTICLE_CONTENT + " ac ON ac._id = a._id"
+                    + " WHERE " + where + " LIMIT 1000", null);
+            // @formatter:on
 
             ArrayList<Article> ret = new ArrayList<>(c.getCount());
+            Map<Integer, Article> articles = new HashMap<>(c.getCount());
             while (c.moveToNext()) {
                 Article a = new Article();
                 a.id = c.getInt(0);
-                a.content = c.getString(1);
-                a.attachments = parseAttachments(c.getString(2));
+                a.content = readContent(c, 1);
+                a.attachments = new LinkedHashSet<>();
                 ret.add(a);
+                articles.put(a.id, a);
+            }
+            c.close();
+
+            // Fetch the attachments of all these articles at once
+            // @formatter:off
+            c = db.rawQuery("SELECT at.articleId, r.url FROM " + TABLE_ATTACHMENTS + " at, "
+                    + TABLE_REMOTEFILES + " r"
+                    + " WHERE at.remotefileId=r.id AND at.articleId IN ("
+                    + "   SELECT _id FROM " + TABLE_ARTICLES + " WHERE " + where + " LIMIT 1000)"
+                    + " ORDER BY at.rowid", null);
+            // @formatter:on
+            while (c.moveToNext()) {
+                Article a = articles.get(c.getInt(0));
+                if (a != null)
+                    a.attachments.add(c.getString(1));
             }
             return ret;
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
     }
 
@@ -1974,7 +2880,6 @@ public class DBHelper {
 
         RemoteFile rf = null;
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_REMOTEFILES, null, "url=?", new String[]{url}, null, null, null, null);
@@ -1986,7 +2891,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
         return rf;
     }
@@ -2003,7 +2907,6 @@ public class DBHelper {
 
         ArrayList<RemoteFile> rfs = null;
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             // @formatter:off
@@ -2029,114 +2932,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
-        }
-        return rfs;
-    }
-
-    /**
-     * get remote files for given articles
-     *
-     * @param whereClause the WHERE clause to apply when selecting.
-     * @param whereArgs   You may include ?s in the where clause, which
-     *                    will be replaced by the values from whereArgs. The values
-     *                    will be bound as Strings.
-     * @param uniqOnly    if set to {@code true}, then only remote files, which are referenced by given articles only
-     *                    will be
-     *                    returned, otherwise all remote files referenced by given articles will be found (even those,
-     *                    which are
-     *                    referenced also by some other articles)
-     * @return collection of remote file objects from DB or {@code null}
-     */
-    private Collection<RemoteFile> getRemoteFilesForArticles(String whereClause, String[] whereArgs, boolean uniqOnly) {
-        if (!isDBAvailable())
-            return null;
-
-        ArrayList<RemoteFile> rfs = null;
-        StringBuilder uniqRestriction = new StringBuilder();
-        String[] queryArgs = whereArgs;
-
-        if (uniqOnly) {
-            // @formatter:off
-            uniqRestriction.append(
-                    " AND m.remotefileId NOT IN (").append(
-                    "   SELECT remotefileId").append(
-                    "     FROM ").append(
-                    TABLE_REMOTEFILE2ARTICLE).append(
-                    "           WHERE remotefileId IN (").append(
-                    "       SELECT remotefileId").append(
-                    "         FROM ").append(
-                    TABLE_REMOTEFILE2ARTICLE).append(
-                    "         WHERE articleId IN (").append(
-                    "           SELECT _id").append(
-                    "             FROM ").append(
-                    TABLE_ARTICLES).append(
-                    "             WHERE ").append(
-                    whereClause).append(
-                    "           )").append(
-                    "         GROUP BY remotefileId)").append(
-                    "       AND articleId NOT IN (").append(
-                    "         SELECT _id").append(
-                    "           FROM ").append(
-                    TABLE_ARTICLES).append(
-                    "           WHERE ").append(
-                    whereClause).append(
-                    "       )").append(
-                    "   GROUP by remotefileId)");
-            // @formatter:on
-
-            // because we are using whereClause twice in uniqRestriction, then we should also extend queryArgs,
-            // which will be used in query
-            if (whereArgs != null) {
-                int initialLength = whereArgs.length;
-                queryArgs = new String[initialLength * 3];
-                for (int i = 0; i < 3; i++) {
-                    System.arraycopy(whereArgs, 0, queryArgs, i * initialLength, initialLength);
-                }
-            }
-        }
-
-        StringBuilder query = new StringBuilder();
-        // @formatter:off
-        query.append(
-                " SELECT r.*").append(
-                "   FROM ").append(
-                TABLE_REMOTEFILES + " r,").append(
-                TABLE_REMOTEFILE2ARTICLE + " m, ").append(
-                TABLE_ARTICLES + " a").append(
-                "   WHERE m.remotefileId=r.id").append(
-                "     AND m.articleId=a._id").append(
-                "     AND a._id IN (").append(
-                "       SELECT _id FROM ").append(
-                TABLE_ARTICLES).append(
-                "       WHERE ").append(
-                whereClause).append(
-                "     )").append(
-                uniqRestriction).append(
-                "   GROUP BY r.id");
-        // @formatter:on
-
-        SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
-        Cursor c = null;
-        try {
-            long time = System.currentTimeMillis();
-            c = db.rawQuery(query.toString(), queryArgs);
-
-            rfs = new ArrayList<>();
-
-            while (c.moveToNext()) {
-                rfs.add(handleRemoteFileCursor(c));
-            }
-            Log.d(TAG, "Query in getRemoteFilesForArticles took " + (System.currentTimeMillis() - time)
-                    + "ms... (remotefiles: " + rfs.size() + ")");
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            if (c != null && !c.isClosed())
-                c.close();
-            readLock(false);
         }
         return rfs;
     }
@@ -2184,8 +2979,11 @@ public class DBHelper {
         try {
             ContentValues cv = new ContentValues(1);
             cv.put("cached", 0);
-            for (String ids : StringSupport.convertListToString(rfIds, 1000)) {
-                db.update(TABLE_REMOTEFILES, cv, "id in (" + ids + ")", null);
+            TempIdSet ids = TempIdSet.create(db, rfIds);
+            try {
+                db.update(TABLE_REMOTEFILES, cv, "id IN " + TempIdSet.SELECT, null);
+            } finally {
+                ids.close();
             }
             db.setTransactionSuccessful();
         } finally {
@@ -2205,7 +3003,6 @@ public class DBHelper {
 
         long ret = 0;
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query(TABLE_REMOTEFILES, new String[]{"SUM(length)"}, "cached=1", null, null, null, null);
@@ -2214,7 +3011,6 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
         return ret;
     }
@@ -2232,7 +3028,6 @@ public class DBHelper {
 
         ArrayList<RemoteFile> rfs = new ArrayList<>();
         SQLiteDatabase db = getOpenHelper().getReadableDatabase();
-        readLock(true);
         Cursor c = null;
         try {
             c = db.query("remotefile_sequence", null, "cached = 1", null, null, null, "ord");
@@ -2246,33 +3041,7 @@ public class DBHelper {
         } finally {
             if (c != null && !c.isClosed())
                 c.close();
-            readLock(false);
         }
         return rfs;
     }
-
-    /**
-     * delete remote files with given IDs
-     *
-     * @param idList set of remote file IDs, which should be deleted
-     * @return the number of deleted rows
-     */
-    private int deleteRemoteFiles(Set<Integer> idList) {
-        if (!isDBAvailable())
-            return 0;
-
-        int deletedCount = 0;
-        if (idList != null && !idList.isEmpty()) {
-            SQLiteDatabase db = getOpenHelper().getWritableDatabase();
-            writeLock(true);
-            try {
-                for (String ids : StringSupport.convertListToString(idList, 400)) {
-                    deletedCount += db.delete(TABLE_REMOTEFILES, "id IN (" + ids + ")", null);
-                }
-            } finally {
-                writeLock(false);
-            }
-        }
-        return deletedCount;
-    }
 }
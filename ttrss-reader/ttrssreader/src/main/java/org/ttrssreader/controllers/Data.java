@@ -23,6 +23,7 @@ import org.ttrssreader.model.pojos.Category;
 import org.ttrssreader.model.pojos.Feed;
 import org.ttrssreader.model.pojos.Label;
 import org.ttrssreader.net.IArticleOmitter;
+import org.ttrssreader.net.IArticleReceiver;
 import org.ttrssreader.net.IdUpdatedArticleOmitter;
 import org.ttrssreader.net.JSONConnector;
 import org.ttrssreader.net.StopJsonParsingException;
@@ -34,7 +35,9 @@ import android.net.ConnectivityManager;
 import android.util.Log;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -91,13 +94,25 @@ public class Data {
     public synchronized void initialize(final Context context) {
         if (context != null)
             cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        StateOutbox.getInstance().initialize(context);
+        ArticleContentResolver.getInstance().initialize(context);
     }
 
     // *** ARTICLES *********************************************************************
 
+    /**
+     * article fields which are not needed to find out which articles changed
+     */
+    private static final Set<Article.ArticleField> HEADER_FIELDS_ONLY = EnumSet.of(Article.ArticleField.content,
+            Article.ArticleField.attachments, Article.ArticleField.labels);
+
     /**
      * cache all articles
      *
+     * New articles are fetched since the ID of the newest cached article (the persistent watermark). For all unread
+     * articles only the headers are fetched, the content is fetched only for articles which are new or changed since
+     * they were cached. The read state is reconciled with the IDs of the unread articles.
+     *
      * @param overrideOffline do not check connected state
      * @param overrideDelay   if set to {@code true} enforces the update,
      *                        otherwise the time from last update will be
@@ -115,47 +130,67 @@ public class Data {
             return;
         }
 
-        Set<Article> articles = new HashSet<>();
-        int sinceId = Controller.getInstance().getSinceId();
+        // Send local changes first, the states from the server would overwrite them otherwise. If they can't be sent
+        // the states are not reconciled, the changes stay in the outbox and are sent later.
+        boolean flushed = StateOutbox.getInstance().flush();
 
-        IdUpdatedArticleOmitter unreadUpdatedFilter = new IdUpdatedArticleOmitter("isUnread>0", null);
-        Controller
-                .getInstance()
-                .getConnector()
-                .getHeadlines(articles, VCAT_ALL, limit, VIEW_UNREAD, true, 0, null, null,
-                        unreadUpdatedFilter.getIdUpdatedMap().isEmpty() ? null : unreadUpdatedFilter);
+        // Fetch new articles since the last sync
+        ArticleWriter articles = new ArticleWriter();
+        int sinceId = Controller.getInstance().getSinceId();
 
-        final Article newestCachedArticle = DBHelper.getInstance().getArticle(sinceId);
+        final Article newestCachedArticle = DBHelper.getInstance().getArticle(sinceId, false);
         IArticleOmitter updatedFilter = (newestCachedArticle == null) ? null : new IArticleOmitter() {
             public Date lastUpdated = newestCachedArticle.updated;
 
             @Override
             public boolean omitArticle(Article.ArticleField field, Article a) throws StopJsonParsingException {
-                boolean skip = false;
-
-                switch (field) {
-                    case unread:
-                        if (a.isUnread)
-                            skip = true;
-                        break;
-                    case updated:
-                        if (a.updated != null && lastUpdated.after(a.updated))
-                            throw new StopJsonParsingException("Stop processing on article ID=" + a.id + " updated on "
-                                    + lastUpdated);
-                    default:
-                        break;
-                }
-
-                return skip;
+                if (field == Article.ArticleField.updated && a.updated != null && lastUpdated.after(a.updated))
+                    throw new StopJsonParsingException("Stop processing on article ID=" + a.id + " updated on "
+                            + lastUpdated);
+                return false;
             }
         };
         Controller.getInstance().getConnector()
                 .getHeadlines(articles, VCAT_ALL, limit, VIEW_ALL, true, sinceId, null, null, updatedFilter);
 
+        if (!articles.finish()) {
+            // Don't move the watermark past articles which are not stored, the next sync fetches them again
+            Log.w(TAG, "Not all new articles could be stored, cache update aborted");
+            handleInsertArticles(articles, false);
+            return;
+        }
         handleInsertArticles(articles, true);
 
+        // Fetch the headers of all unread articles, unchanged articles are only collected by the filter
+        final Set<Integer> changedIds = new HashSet<>();
+        IArticleReceiver changedReceiver = new IArticleReceiver() {
+            @Override
+            public void receiveArticle(Article a) {
+                changedIds.add(a.id);
+            }
+        };
+        IdUpdatedArticleOmitter unchangedFilter = new IdUpdatedArticleOmitter(null, null);
+        boolean received = Controller.getInstance().getConnector()
+                .getHeadlines(changedReceiver, VCAT_ALL, Utils.ARTICLE_LIMIT, VIEW_UNREAD, true, 0, null,
+                        HEADER_FIELDS_ONLY, unchangedFilter);
+        unchangedFilter.release();
+
+        Set<Integer> unreadIds = new HashSet<>(changedIds);
+        unchangedFilter.getOmittedArticles().addTo(unreadIds);
+        boolean unreadComplete = received && unreadIds.size() < Utils.ARTICLE_LIMIT;
+
+        // Fetch content only for the new or changed unread articles
+        ArticleWriter changed = new ArticleWriter();
+        boolean changedReceived = Controller.getInstance().getConnector().getArticles(changed, changedIds);
+        boolean changedWritten = changed.finish();
+        handleInsertArticles(changed, false);
+        if (!changedReceived || !changedWritten) {
+            Log.w(TAG, "Not all changed articles could be fetched and stored, cache update aborted");
+            return;
+        }
+
         // Only mark as updated if the calls were successful
-        if (!articles.isEmpty() || !unreadUpdatedFilter.getOmittedArticles().isEmpty()) {
+        if (articles.getCount() > 0 || changed.getCount() > 0 || !unreadIds.isEmpty()) {
             time = System.currentTimeMillis();
             notifyListeners();
 
@@ -165,21 +200,19 @@ public class Data {
                 feedsChanged.put(c.id, time);
             }
 
-            Set<Integer> articleUnreadIds = new HashSet<>();
-            for (Article a : articles) {
-                if (a.isUnread)
-                    articleUnreadIds.add(a.id);
+            // Only rows whose state differs from the server are written
+            Log.d(TAG, "Amount of unread articles: " + unreadIds.size());
+            if (flushed) {
+                if (unreadComplete)
+                    DBHelper.getInstance().handlePurgeMarked(unreadIds, 0, DBHelper.MARK_READ);
+                DBHelper.getInstance().markArticles(unreadIds, DBHelper.MARK_READ, 1);
             }
-
-            articleUnreadIds.addAll(unreadUpdatedFilter.getOmittedArticles());
-            Log.d(TAG, "Amount of unread articles: " + articleUnreadIds.size());
-            DBHelper.getInstance().markRead(VCAT_ALL, false);
-            DBHelper.getInstance().markArticles(articleUnreadIds, "isUnread", 1);
         }
     }
 
     /**
-     * update articles for specified feed/category
+     * update articles for specified feed/category. Only the headers are fetched first, the content is fetched for
+     * articles which are new or have been updated on the server only.
      *
      * @param feedId            feed/category to be updated
      * @param displayOnlyUnread flag, that indicates, that only unread
@@ -206,19 +239,18 @@ public class Data {
             return;
         }
 
+        // Send local changes first, the states from the server would overwrite them otherwise. If they can't be sent
+        // the states are not reconciled, the changes stay in the outbox and are sent later.
+        boolean flushed = StateOutbox.getInstance().flush();
+
         boolean isVcat = (feedId == VCAT_PUB || feedId == VCAT_STAR);
         int sinceId = 0;
-        IArticleOmitter filter;
 
         if (isVcat) {
             // Display all articles for Starred/Published:
             displayOnlyUnread = false;
-            // Don't omit any articles, isPublished should never be < 0:
-            filter = new IdUpdatedArticleOmitter("isPublished<0", null);
         } else {
             sinceId = Controller.getInstance().getSinceId();
-            // TODO: passing null adds all(!) articles to the map, this can take a second or two on slow devices...
-            filter = new IdUpdatedArticleOmitter(null, null);
         }
 
         // Calculate an appropriate upper limit for the number of articles
@@ -227,23 +259,43 @@ public class Data {
             limit = limit / 2;
 
         Log.d(TAG, "UPDATE limit: " + limit);
-        Set<Article> articles = new HashSet<>();
+
+        // First only fetch the headers and compare them with the cached articles. Passing null adds all(!) articles to
+        // the map, it is reused between updates to keep this cheap.
+        IdUpdatedArticleOmitter cached = new IdUpdatedArticleOmitter(null, null);
+        ArticleHeaderDiff headers = new ArticleHeaderDiff(cached.getIdUpdatedMap());
 
         if (!displayOnlyUnread) {
             // If not displaying only unread articles: Refresh unread articles to get them too.
             Controller.getInstance().getConnector()
-                    .getHeadlines(articles, feedId, limit, VIEW_UNREAD, isCat, 0, null, null, filter);
+                    .getHeadlines(headers, feedId, limit, VIEW_UNREAD, isCat, 0, null, HEADER_FIELDS_ONLY, null);
         }
 
         String viewMode = (displayOnlyUnread ? VIEW_UNREAD : VIEW_ALL);
         Controller.getInstance().getConnector()
-                .getHeadlines(articles, feedId, limit, viewMode, isCat, sinceId, null, null, filter);
+                .getHeadlines(headers, feedId, limit, viewMode, isCat, sinceId, null, HEADER_FIELDS_ONLY, null);
+        cached.release();
+
+        if (flushed)
+            headers.updateStates();
+
+        // Then fetch the content of the new and changed articles only
+        ArticleWriter articles = new ArticleWriter();
+        boolean received = Controller.getInstance().getConnector().getArticles(articles, headers.getChangedIds());
+        boolean written = articles.finish();
 
-        if (isVcat)
-            handlePurgeMarked(articles, feedId);
+        if (isVcat && flushed)
+            handlePurgeMarked(headers.getIds(), headers.getMinId(), feedId);
 
         handleInsertArticles(articles, false);
 
+        if (!received || !written) {
+            // Don't store the update time, the next update fetches the missing articles again
+            Log.w(TAG, "Not all articles of feed " + feedId + " could be fetched and stored");
+            notifyListeners();
+            return;
+        }
+
         long currentTime = System.currentTimeMillis();
         // Store requested feed-/category-id and ids of all feeds in db for this category if a category was requested
         articlesChanged.put(feedId, currentTime);
@@ -281,19 +333,9 @@ public class Data {
         return limit;
     }
 
-    private void handlePurgeMarked(Set<Article> articles, int feedId) {
+    private void handlePurgeMarked(Set<Integer> ids, int minId, int feedId) {
         // TODO Alle Artikel mit ID > minId als nicht starred und nicht published markieren
 
-        // Search min and max ids
-        int minId = Integer.MAX_VALUE;
-        Set<String> idSet = new HashSet<>();
-        for (Article article : articles) {
-            if (article.id < minId)
-                minId = article.id;
-            idSet.add(article.id + "");
-        }
-
-        String idList = Utils.separateItems(idSet, ",");
         String vcat;
         if (feedId == VCAT_STAR)
             vcat = "isStarred";
@@ -302,33 +344,23 @@ public class Data {
         else
             return;
 
-        DBHelper.getInstance().handlePurgeMarked(idList, minId, vcat);
+        DBHelper.getInstance().handlePurgeMarked(ids, minId, vcat);
     }
 
     /**
-     * prepare the DB and store given articles
+     * clean up the DB after articles have been stored
      *
-     * @param articles articles to be stored
+     * @param articles the writer, which already stored the articles
      */
-    private void handleInsertArticles(final Collection<Article> articles, boolean isCaching) {
-        if (!articles.isEmpty()) {
-
-            // Search min and max ids
-            int minId = Integer.MAX_VALUE;
-            int maxId = Integer.MIN_VALUE;
-            for (Article article : articles) {
-                if (article.id > maxId)
-                    maxId = article.id;
-                if (article.id < minId)
-                    minId = article.id;
-            }
+    private void handleInsertArticles(final ArticleWriter articles, boolean isCaching) {
+        if (articles.getCount() > 0) {
 
-            DBHelper.getInstance().purgeLastArticles(articles.size());
-            DBHelper.getInstance().insertArticles(articles);
+            // The new articles are already stored, what exceeds the limits is purged in the background
+            RetentionEngine.getInstance().schedule();
 
             // Only store sinceId when doing a full cache of new articles, else it doesn't work.
             if (isCaching) {
-                Controller.getInstance().setSinceId(maxId);
+                Controller.getInstance().setSinceId(articles.getMaxId());
                 Controller.getInstance().setLastSync(System.currentTimeMillis());
             }
         }
@@ -337,7 +369,7 @@ public class Data {
     // *** FEEDS ************************************************************************
 
     /**
-     * update DB (delete/insert) with actual feeds information from server
+     * update DB (insert/update/delete only what changed) with actual feeds information from server
      *
      * @param categoryId      id of category, which feeds should be returned
      * @param overrideOffline do not check connected state
@@ -363,12 +395,12 @@ public class Data {
 
                     feedsChanged.put(f.categoryId, System.currentTimeMillis());
                 }
-                DBHelper.getInstance().deleteFeeds();
-                DBHelper.getInstance().insertFeeds(feeds);
+                boolean changed = DBHelper.getInstance().updateFeeds(feeds);
 
                 // Store requested category-id and ids of all received feeds
                 feedsChanged.put(categoryId, System.currentTimeMillis());
-                notifyListeners();
+                if (changed)
+                    notifyListeners();
             }
 
             return ret;
@@ -401,8 +433,8 @@ public class Data {
         vCats.add(new Category(VCAT_STAR, vCatStarredArticles, DBHelper.getInstance().getUnreadCount(VCAT_STAR, true)));
         vCats.add(new Category(VCAT_UNCAT, uncatFeeds, DBHelper.getInstance().getUnreadCount(VCAT_UNCAT, true)));
 
-        DBHelper.getInstance().insertCategories(vCats);
-        notifyListeners();
+        if (DBHelper.getInstance().updateCategories(vCats, false))
+            notifyListeners();
 
         virtCategoriesChanged = System.currentTimeMillis();
 
@@ -410,7 +442,7 @@ public class Data {
     }
 
     /**
-     * update DB (delete/insert) with actual categories information from server
+     * update DB (insert/update/delete only what changed) with actual categories information from server
      *
      * @param overrideOffline do not check connected state
      * @return actual categories
@@ -422,11 +454,11 @@ public class Data {
             Set<Category> categories = Controller.getInstance().getConnector().getCategories();
 
             if (!categories.isEmpty()) {
-                DBHelper.getInstance().deleteCategories(false);
-                DBHelper.getInstance().insertCategories(categories);
+                boolean changed = DBHelper.getInstance().updateCategories(categories, true);
 
                 categoriesChanged = System.currentTimeMillis();
-                notifyListeners();
+                if (changed)
+                    notifyListeners();
             }
 
             return categories;
@@ -436,40 +468,32 @@ public class Data {
 
     // *** STATUS *******************************************************************
 
-    public void setArticleRead(Set<Integer> ids, int articleState) {
-        boolean erg = false;
-        if (Utils.isConnected(cm))
-            erg = Controller.getInstance().getConnector().setArticleRead(ids, articleState);
+    // State changes are queued in the outbox and sent in the background by StateOutbox, see queueStateChanges()
 
-        if (!erg)
-            DBHelper.getInstance().markUnsynchronizedStates(ids, DBHelper.MARK_READ, articleState);
+    public void setArticleRead(Set<Integer> ids, int articleState) {
+        queueStateChanges(ids, StateOutbox.FIELD_UNREAD, 0, articleState, null);
     }
 
     public void setArticleStarred(int articleId, int articleState) {
-        boolean erg = false;
-        Set<Integer> ids = new HashSet<>();
-        ids.add(articleId);
-
-        if (Utils.isConnected(cm))
-            erg = Controller.getInstance().getConnector().setArticleStarred(ids, articleState);
-
-        if (!erg)
-            DBHelper.getInstance().markUnsynchronizedStates(ids, DBHelper.MARK_STAR, articleState);
+        queueStateChanges(Collections.singleton(articleId), StateOutbox.FIELD_STARRED, 0, articleState, null);
     }
 
     public void setArticlePublished(int articleId, int articleState, String note) {
-        boolean erg = false;
-        Map<Integer, String> ids = new HashMap<>();
-        ids.put(articleId, note);
-
-        if (Utils.isConnected(cm))
-            erg = Controller.getInstance().getConnector().setArticlePublished(ids, articleState);
+        DBHelper.getInstance().queueStateChanges(Collections.singleton(articleId), StateOutbox.FIELD_PUBLISHED, 0,
+                articleState, null);
+        if (note != null && !note.equals(""))
+            DBHelper.getInstance().queueStateChanges(Collections.singleton(articleId), StateOutbox.FIELD_NOTE, 0, 1,
+                    note);
+        StateOutbox.getInstance().changed();
+    }
 
-        // Write changes to cache if calling the server failed
-        if (!erg) {
-            DBHelper.getInstance().markUnsynchronizedStates(ids.keySet(), DBHelper.MARK_PUBLISH, articleState);
-            DBHelper.getInstance().markUnsynchronizedNotes(ids);
-        }
+    /**
+     * add the given state change of the given articles to the outbox, a pending change of the same articles and field
+     * is replaced
+     */
+    private void queueStateChanges(Collection<Integer> ids, int field, int labelId, int state, String data) {
+        DBHelper.getInstance().queueStateChanges(ids, field, labelId, state, data);
+        StateOutbox.getInstance().changed();
     }
 
     /**
@@ -486,8 +510,11 @@ public class Data {
             if (Utils.isConnected(cm))
                 isSync = Controller.getInstance().getConnector().setRead(id, isCategory);
 
-            if (!isSync)
-                DBHelper.getInstance().markUnsynchronizedStates(markedArticleIds, DBHelper.MARK_READ, 0);
+            // Pending changes of these articles would undo the catchup on the server
+            if (isSync)
+                DBHelper.getInstance().dequeueStateChanges(markedArticleIds, StateOutbox.FIELD_UNREAD);
+            else
+                queueStateChanges(markedArticleIds, StateOutbox.FIELD_UNREAD, 0, 0, null);
         }
 
     }
@@ -527,70 +554,19 @@ public class Data {
         DBHelper.getInstance().insertLabels(articleIds, label, label.checked);
         notifyListeners();
 
-        boolean erg = false;
-        if (Utils.isConnected(cm)) {
-            Log.d(TAG, "Calling connector with Label: " + label + ") and ids.size() " + articleIds.size());
-            erg = Controller.getInstance().getConnector().setArticleLabel(articleIds, label.id, label.checked);
-        }
-        return erg;
+        queueStateChanges(articleIds, StateOutbox.FIELD_LABEL, label.id, label.checked ? 1 : 0, null);
+        return true;
     }
 
     /**
-     * syncronize read, starred, published articles and notes with server
+     * syncronize read, starred, published articles, notes and labels with server, i.e. send the outbox right away
      */
     public void synchronizeStatus() {
         if (!Utils.isConnected(cm))
             return;
 
         long time = System.currentTimeMillis();
-
-        String[] marks = new String[]{DBHelper.MARK_READ, DBHelper.MARK_STAR, DBHelper.MARK_PUBLISH,
-                DBHelper.MARK_NOTE};
-        for (String mark : marks) {
-            Map<Integer, String> idsMark = DBHelper.getInstance().getMarked(mark, 1);
-            Map<Integer, String> idsUnmark = DBHelper.getInstance().getMarked(mark, 0);
-
-            if (DBHelper.MARK_READ.equals(mark)) {
-                if (Controller.getInstance().getConnector().setArticleRead(idsMark.keySet(), 1))
-                    DBHelper.getInstance().setMarked(idsMark, mark);
-
-                if (Controller.getInstance().getConnector().setArticleRead(idsUnmark.keySet(), 0))
-                    DBHelper.getInstance().setMarked(idsUnmark, mark);
-            }
-            if (DBHelper.MARK_STAR.equals(mark)) {
-                if (Controller.getInstance().getConnector().setArticleStarred(idsMark.keySet(), 1))
-                    DBHelper.getInstance().setMarked(idsMark, mark);
-
-                if (Controller.getInstance().getConnector().setArticleStarred(idsUnmark.keySet(), 0))
-                    DBHelper.getInstance().setMarked(idsUnmark, mark);
-            }
-            if (DBHelper.MARK_PUBLISH.equals(mark)) {
-                if (Controller.getInstance().getConnector().setArticlePublished(idsMark, 1))
-                    DBHelper.getInstance().setMarked(idsMark, mark);
-
-                if (Controller.getInstance().getConnector().setArticlePublished(idsUnmark, 0))
-                    DBHelper.getInstance().setMarked(idsUnmark, mark);
-            }
-            // TODO: Add synchronization of labels
-        }
-        
-        /*
-         * Server doesn't seem to support ID -6 for "read articles" so I'll stick with the already fetched articles. In
-         * the case that we had a cache-run before we can just mark everything as read, then mark all cached articles as
-         * unread and we're done.
-         */
-
-        // get read articles from server
-        // articles = new HashSet<Article>();
-        // int minUnread = DBHelper.getInstance().getMinUnreadId();
-        // Set<String> skipProperties = new HashSet<String>(Arrays.asList(new String[] { JSONConnector.TITLE,
-        // JSONConnector.UNREAD, JSONConnector.UPDATED, JSONConnector.FEED_ID, JSONConnector.CONTENT,
-        // JSONConnector.URL, JSONConnector.COMMENT_URL, JSONConnector.ATTACHMENTS, JSONConnector.STARRED,
-        // JSONConnector.PUBLISHED }));
-        //
-        // Controller.getInstance().getConnector()
-        // .getHeadlines(articles, VCAT_ALL, 400, VIEW_ALL, true, minUnread, null, skipProperties);
-
+        StateOutbox.getInstance().flush();
         Log.d(TAG, String.format("Syncing Status took %sms", (System.currentTimeMillis() - time)));
     }
 
@@ -598,10 +574,13 @@ public class Data {
         if (Controller.getInstance().getLastCleanup() > System.currentTimeMillis() - Utils.CLEANUP_TIME)
             return;
 
-        DBHelper.getInstance().purgeOrphanedArticles();
+        RetentionEngine.getInstance().purgeOrphans();
         Controller.getInstance().setLastCleanup(System.currentTimeMillis());
     }
 
+    /**
+     * recount all unread counters, only necessary after a sync since the counters are kept up to date by the DB
+     */
     public void calculateCounters() {
         DBHelper.getInstance().calculateCounters();
     }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.controllers;
+
+import org.ttrssreader.imageCache.ImageCache;
+import org.ttrssreader.model.pojos.RemoteFile;
+import org.ttrssreader.utils.Utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes articles which exceed the configured limits in the background. Purging starts a while after the last sync,
+ * so it doesn't compete with the sync for the DB, and deletes the articles in small chunks with one short transaction
+ * each. A run stops after {@link #RUN_TIME} and continues after a pause, so readers and writers are never blocked for
+ * long, even if thousands of articles have to be deleted at once.
+ * <p>
+ * The limits are the maximum number and age of the articles, starred and published articles can be kept in addition.
+ * Feeds with their own {@link Policy} are not counted against the global limits.
+ */
+public class RetentionEngine {
+
+    private static final String TAG = RetentionEngine.class.getSimpleName();
+
+    /** time to wait after a sync before purging, further syncs postpone it */
+    private static final long DELAY = 10 * Utils.SECOND;
+    /** maximum duration of a run, the remaining articles are deleted in the next run */
+    private static final long RUN_TIME = 2 * Utils.SECOND;
+    /** pause between two runs */
+    private static final long PAUSE = Utils.SECOND;
+    /** number of articles deleted in one transaction */
+    private static final int CHUNK_SIZE = 100;
+
+    /**
+     * retention limits of the articles of a single feed, replacing the global limits
+     */
+    public static class Policy {
+        /** number of articles to keep, 0 to keep all */
+        public final int maxArticles;
+        /** maximum age of the articles in days, 0 to keep them regardless of their age */
+        public final int maxAgeDays;
+
+        public Policy(int maxArticles, int maxAgeDays) {
+            this.maxArticles = maxArticles;
+            this.maxAgeDays = maxAgeDays;
+        }
+    }
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private ScheduledFuture<?> scheduledRun;
+    /** set if the articles have changed since the candidates were selected */
+    private boolean dirty = false;
+    private boolean purgeOrphans = false;
+
+    // Only accessed by the executor thread
+    /** articles of feeds which don't exist anymore, they are deleted regardless of their state */
+    private final Deque<Integer> orphans = new ArrayDeque<>();
+    private final Deque<Integer> candidates = new ArrayDeque<>();
+    private long passStart;
+    private int deletedArticles;
+    private long reclaimedBytes;
+
+    // Singleton (see http://stackoverflow.com/a/11165926)
+    private RetentionEngine() {
+    }
+
+    private static class InstanceHolder {
+        private static final RetentionEngine instance = new RetentionEngine();
+    }
+
+    public static RetentionEngine getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * to be called after articles have been stored, the articles exceeding the limits are purged when no further
+     * articles are stored for a while
+     */
+    public synchronized void schedule() {
+        dirty = true;
+        if (scheduledRun != null)
+            scheduledRun.cancel(false);
+        scheduledRun = executor.schedule(runTask, DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * purge articles of feeds which don't exist anymore with the next run
+     */
+    public synchronized void purgeOrphans() {
+        purgeOrphans = true;
+        schedule();
+    }
+
+    private synchronized void scheduleNextRun() {
+        // A sync in the meantime has already scheduled a run
+        if (scheduledRun == null)
+            scheduledRun = executor.schedule(runTask, PAUSE, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable runTask = new Runnable() {
+        @Override
+        public void run() {
+            boolean select;
+            boolean selectOrphans;
+            synchronized (RetentionEngine.this) {
+                scheduledRun = null;
+                select = dirty;
+                selectOrphans = purgeOrphans;
+                dirty = false;
+                purgeOrphans = false;
+            }
+
+            try {
+                if (select) {
+                    long time = System.currentTimeMillis();
+                    if (selectOrphans) {
+                        orphans.clear();
+                        orphans.addAll(DBHelper.getInstance().getOrphanedArticleIds());
+                    }
+                    candidates.clear();
+                    candidates.addAll(selectCandidates());
+                    Log.d(TAG, String.format("Selected %s articles to purge in %sms",
+                            orphans.size() + candidates.size(), System.currentTimeMillis() - time));
+
+                    passStart = time;
+                    deletedArticles = 0;
+                    reclaimedBytes = 0;
+                }
+
+                if (orphans.isEmpty() && candidates.isEmpty())
+                    return;
+
+                // The keep settings are read for every chunk, so a changed setting applies to the selected articles
+                Controller controller = Controller.getInstance();
+                long start = System.currentTimeMillis();
+                while (!(orphans.isEmpty() && candidates.isEmpty())
+                        && System.currentTimeMillis() - start < RUN_TIME) {
+                    if (!orphans.isEmpty())
+                        delete(poll(orphans), false, false);
+                    else
+                        delete(poll(candidates), controller.purgeKeepStarred(), controller.purgeKeepPublished());
+                }
+
+                if (orphans.isEmpty() && candidates.isEmpty()) {
+                    Log.i(TAG, String.format("Purged %s articles, reclaimed %s KB in %sms", deletedArticles,
+                            reclaimedBytes / 1024, System.currentTimeMillis() - passStart));
+                } else {
+                    scheduleNextRun();
+                }
+            } catch (Exception e) {
+                // Nothing to recover, the articles are selected again after the next sync
+                Log.e(TAG, "Purging articles failed", e);
+                orphans.clear();
+                candidates.clear();
+            }
+        }
+    };
+
+    private static Set<Integer> selectCandidates() {
+        Controller controller = Controller.getInstance();
+        DBHelper dbHelper = DBHelper.getInstance();
+        boolean keepStarred = controller.purgeKeepStarred();
+        boolean keepPublished = controller.purgeKeepPublished();
+        Map<Integer, Policy> policies = controller.getFeedRetentionPolicies();
+
+        Set<Integer> ret = new LinkedHashSet<>();
+        ret.addAll(dbHelper.getExpiredArticleIds(null, policies.keySet(), controller.purgeArticleLimit(),
+                minUpdateDate(controller.purgeArticleMaxAge()), keepStarred, keepPublished));
+
+        for (Map.Entry<Integer, Policy> entry : policies.entrySet()) {
+            Policy policy = entry.getValue();
+            ret.addAll(dbHelper.getExpiredArticleIds(entry.getKey(), null, policy.maxArticles,
+                    minUpdateDate(policy.maxAgeDays), keepStarred, keepPublished));
+        }
+        return ret;
+    }
+
+    private static long minUpdateDate(int maxAgeDays) {
+        if (maxAgeDays <= 0)
+            return 0;
+        return System.currentTimeMillis() - maxAgeDays * Utils.DAY;
+    }
+
+    private static List<Integer> poll(Deque<Integer> queue) {
+        List<Integer> chunk = new ArrayList<>(CHUNK_SIZE);
+        while (!queue.isEmpty() && chunk.size() < CHUNK_SIZE) {
+            chunk.add(queue.poll());
+        }
+        return chunk;
+    }
+
+    private void delete(List<Integer> chunk, boolean keepStarred, boolean keepPublished) {
+        DBHelper.DeleteResult result = DBHelper.getInstance().deleteArticles(chunk, keepStarred, keepPublished);
+        deletedArticles += result.articles;
+        reclaimedBytes += result.contentBytes;
+
+        // The files are deleted after the transaction, a file left behind by a crash is only wasted space
+        if (result.remoteFiles.isEmpty())
+            return;
+        ImageCache imageCache = Controller.getInstance().getImageCache();
+        if (imageCache == null)
+            return;
+        for (RemoteFile rf : result.remoteFiles) {
+            File file = imageCache.getCacheFile(rf.url);
+            long length = file.length();
+            if (file.delete())
+                reclaimedBytes += length;
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.controllers;
+
+import org.ttrssreader.net.JSONConnector;
+import org.ttrssreader.utils.Utils;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for the read, starred, published, note and label changes made by the user. The changes are
+ * stored in the outbox table right away, so the UI never waits for the server. They are sent in the background once
+ * no further changes were made for {@link #FLUSH_DELAY} or when the device gets connected, with one request per field
+ * and state instead of one request per article. If sending fails it is retried with increasing delays.
+ */
+public class StateOutbox {
+
+    private static final String TAG = StateOutbox.class.getSimpleName();
+
+    // Fields as used by the updateArticle API call, labels are set with setArticleLabel instead
+    static final int FIELD_STARRED = 0;
+    static final int FIELD_PUBLISHED = 1;
+    static final int FIELD_UNREAD = 2;
+    static final int FIELD_NOTE = 3;
+    static final int FIELD_LABEL = 4;
+
+    /** time to wait for further changes before the outbox is sent */
+    private static final long FLUSH_DELAY = 3 * Utils.SECOND;
+    /** changes are not held back longer than this, even if the user keeps making changes */
+    private static final long MAX_FLUSH_DELAY = 30 * Utils.SECOND;
+
+    private static final long MIN_RETRY_DELAY = 15 * Utils.SECOND;
+    private static final long MAX_RETRY_DELAY = 30 * Utils.MINUTE;
+
+    /**
+     * a pending state change as stored in the outbox table
+     */
+    static class Change {
+        final long seq;
+        final int articleId;
+        final int field;
+        final int labelId;
+        final int state;
+        final String data;
+
+        Change(long seq, int articleId, int field, int labelId, int state, String data) {
+            this.seq = seq;
+            this.articleId = articleId;
+            this.field = field;
+            this.labelId = labelId;
+            this.state = state;
+            this.data = data;
+        }
+
+        /**
+         * @return key of the request this change can be sent with
+         */
+        private String batchKey() {
+            // All notes are sent together, JSONConnector groups them by note
+            if (field == FIELD_NOTE)
+                return String.valueOf(field);
+            return field + ":" + labelId + ":" + state;
+        }
+    }
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Object flushLock = new Object();
+
+    private ConnectivityManager cm;
+    private BroadcastReceiver connectivityReceiver;
+
+    private ScheduledFuture<?> scheduledFlush;
+    /** time of the first change which hasn't been sent yet, 0 if there is none */
+    private long firstChange = 0;
+    /** delay of the next retry, 0 if the last attempt succeeded */
+    private long retryDelay = 0;
+
+    // Singleton (see http://stackoverflow.com/a/11165926)
+    private StateOutbox() {
+    }
+
+    private static class InstanceHolder {
+        private static final StateOutbox instance = new StateOutbox();
+    }
+
+    public static StateOutbox getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    public synchronized void initialize(final Context context) {
+        if (context == null)
+            return;
+
+        cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (connectivityReceiver == null) {
+            connectivityReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    if (Utils.isConnected(cm))
+                        connected();
+                }
+            };
+            // Delivered once right away since the broadcast is sticky, so changes left over from the last run are sent
+            context.getApplicationContext().registerReceiver(connectivityReceiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    /**
+     * to be called after changes have been added to the outbox, they are sent when no further changes are made for a
+     * short while
+     */
+    synchronized void changed() {
+        long now = System.currentTimeMillis();
+        if (firstChange == 0)
+            firstChange = now;
+
+        // Don't hammer the server while a retry is pending
+        if (retryDelay > 0)
+            return;
+
+        schedule(Math.max(0, Math.min(FLUSH_DELAY, firstChange + MAX_FLUSH_DELAY - now)));
+    }
+
+    private synchronized void connected() {
+        retryDelay = 0;
+        schedule(0);
+    }
+
+    private synchronized void schedule(long delay) {
+        if (scheduledFlush != null)
+            scheduledFlush.cancel(false);
+        scheduledFlush = executor.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!Utils.isConnected(cm)) {
+                if (!Controller.getInstance().workOffline() && Utils.checkConnected(cm)) {
+                    // Only the unreachable server holds the changes back. No broadcast tells when it is probed again,
+                    // so try again by then.
+                    long delay = Controller.getInstance().getConnector().getServerUnreachableTime();
+                    synchronized (StateOutbox.this) {
+                        schedule(Math.max(Utils.SECOND, delay));
+                    }
+                }
+                // Otherwise sent when the device gets connected again
+                return;
+            }
+
+            synchronized (StateOutbox.this) {
+                firstChange = 0;
+            }
+
+            boolean sent = flush();
+
+            synchronized (StateOutbox.this) {
+                if (sent) {
+                    retryDelay = 0;
+                } else {
+                    retryDelay = (retryDelay == 0) ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+                    Log.w(TAG, String.format("Sending state changes failed, retrying in %ss",
+                            retryDelay / Utils.SECOND));
+                    schedule(retryDelay);
+                }
+            }
+        }
+    };
+
+    /**
+     * send all pending changes to the server, the changes are removed from the outbox once they have been sent. If a
+     * request fails the remaining changes are kept, so they are never sent in a different order.
+     *
+     * @return {@code true} if all changes have been sent
+     */
+    boolean flush() {
+        synchronized (flushLock) {
+            List<Change> changes = DBHelper.getInstance().getStateChanges();
+            if (changes.isEmpty())
+                return true;
+
+            long time = System.currentTimeMillis();
+
+            // One request per field and state (and label or note), in the order of the first change of each
+            Map<String, List<Change>> batches = new LinkedHashMap<>();
+            for (Change change : changes) {
+                List<Change> batch = batches.get(change.batchKey());
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                    batches.put(change.batchKey(), batch);
+                }
+                batch.add(change);
+            }
+
+            for (List<Change> batch : batches.values()) {
+                if (!send(batch))
+                    return false;
+                DBHelper.getInstance().removeStateChanges(batch);
+            }
+
+            Log.d(TAG, String.format("Sent %s state changes in %s batches in %sms", changes.size(), batches.size(),
+                    System.currentTimeMillis() - time));
+            return true;
+        }
+    }
+
+    @SuppressLint("UseSparseArrays")
+    private static boolean send(List<Change> batch) {
+        Change first = batch.get(0);
+        Set<Integer> ids = new LinkedHashSet<>();
+        Map<Integer, String> notes = new HashMap<>();
+        for (Change change : batch) {
+            ids.add(change.articleId);
+            notes.put(change.articleId, change.data);
+        }
+
+        JSONConnector connector = Controller.getInstance().getConnector();
+        switch (first.field) {
+            case FIELD_STARRED:
+                return connector.setArticleStarred(ids, first.state);
+            case FIELD_PUBLISHED:
+                // Notes are queued separately
+                notes.clear();
+                for (Integer id : ids) {
+                    notes.put(id, null);
+                }
+                return connector.setArticlePublished(notes, first.state);
+            case FIELD_UNREAD:
+                return connector.setArticleRead(ids, first.state);
+            case FIELD_NOTE:
+                return connector.setArticleNotes(notes);
+            case FIELD_LABEL:
+                return connector.setArticleLabel(ids, first.labelId, first.state > 0);
+            default:
+                Log.w(TAG, "Dropping state changes of unknown field " + first.field);
+                return true;
+        }
+    }
+
+}
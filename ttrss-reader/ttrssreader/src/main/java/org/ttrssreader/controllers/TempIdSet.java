@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.controllers;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Collection;
+
+/**
+ * A set of IDs loaded into a temporary table, so UPDATE and DELETE statements can select their rows from it instead
+ * of containing long, string-concatenated IN lists which SQLite has to parse for every call.
+ * <p>
+ * Temporary tables only exist on the connection they were created on, so the set has to be created, used and closed
+ * within one transaction. There can only be one set at a time.
+ */
+final class TempIdSet {
+
+    private static final String TABLE = "temp_ids";
+
+    /**
+     * the rows of the set for use in an IN clause, e.g. {@code "_id IN " + TempIdSet.SELECT}
+     */
+    static final String SELECT = "(SELECT _id FROM " + TABLE + ")";
+
+    // @formatter:off
+    private static final String CREATE_TABLE =
+            "CREATE TEMP TABLE IF NOT EXISTS "
+                    + TABLE
+                    + " (_id INTEGER PRIMARY KEY)";
+
+    private static final String INSERT =
+            "INSERT OR IGNORE INTO "
+                    + TABLE
+                    + " (_id) VALUES (?)";
+    // @formatter:on
+
+    private final SQLiteDatabase db;
+
+    private TempIdSet(SQLiteDatabase db) {
+        this.db = db;
+    }
+
+    /**
+     * load the given IDs into the temporary table, must be called within a transaction
+     *
+     * @param db  the DB
+     * @param ids the IDs
+     * @return the set, it has to be closed before the transaction ends
+     */
+    static TempIdSet create(SQLiteDatabase db, Collection<? extends Number> ids) {
+        db.execSQL(CREATE_TABLE);
+        db.delete(TABLE, null, null);
+
+        SQLiteStatement insert = db.compileStatement(INSERT);
+        try {
+            for (Number id : ids) {
+                insert.bindLong(1, id.longValue());
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+        return new TempIdSet(db);
+    }
+
+    /**
+     * remove IDs from the set
+     *
+     * @param select the IDs to be removed, e.g. {@code "(SELECT _id FROM articles WHERE isStarred=1)"}
+     */
+    void removeAll(String select) {
+        db.delete(TABLE, "_id IN " + select, null);
+    }
+
+    /**
+     * empty the temporary table
+     */
+    void close() {
+        db.delete(TABLE, null, null);
+    }
+
+}
@@ -261,7 +261,7 @@ public class CategoryActivity extends MenuActivity implements IItemSelectedListe
             Data.getInstance().notifyListeners();
             publishProgress(taskCount); // Move progress forward to 100%
 
-            // Silently try to synchronize any ids left in TABLE_MARK:
+            // Silently try to send any state changes left in the outbox:
             Data.getInstance().synchronizeStatus();
 
             // Silently remove articles which belongs to feeds which do not exist on the server anymore:
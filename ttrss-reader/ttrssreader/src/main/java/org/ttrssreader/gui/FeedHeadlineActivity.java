@@ -252,7 +252,6 @@ public class FeedHeadlineActivity extends MenuActivity {
                 Data.getInstance().updateArticles(headlineFragment.getFeedId(), displayUnread, false, false,
                         forceUpdate);
             }
-            Data.getInstance().calculateCounters();
             Data.getInstance().notifyListeners();
             publishProgress(taskCount); // Move progress forward to 100%
             return null;
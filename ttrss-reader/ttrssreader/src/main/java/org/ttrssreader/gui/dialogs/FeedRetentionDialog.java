@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.gui.dialogs;
+
+import org.ttrssreader.R;
+import org.ttrssreader.controllers.Controller;
+import org.ttrssreader.controllers.RetentionEngine;
+
+import android.annotation.SuppressLint;
+import android.app.AlertDialog;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.EditText;
+
+/**
+ * Lets the user set the article limits of a single feed, which replace the global limits for its articles.
+ */
+public class FeedRetentionDialog extends MyDialogFragment {
+
+    public static final String DIALOG = "feedretentiondialog";
+
+    private static final String PARAM_FEED_ID = "feed_id";
+
+    private int feedId;
+
+    private EditText maxArticles;
+    private EditText maxAge;
+
+    public static FeedRetentionDialog newInstance(int feedId) {
+        FeedRetentionDialog frag = new FeedRetentionDialog();
+        Bundle args = new Bundle();
+        args.putInt(PARAM_FEED_ID, feedId);
+        frag.setArguments(args);
+        return frag;
+    }
+
+    @SuppressLint("InflateParams")
+    @Override
+    public Dialog onCreateDialog(Bundle args) {
+        feedId = getArguments().getInt(PARAM_FEED_ID);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(new ContextThemeWrapper(getActivity(),
+                R.style.AboutDialog));
+
+        LayoutInflater inflater = getActivity().getLayoutInflater();
+        View view = inflater.inflate(R.layout.feedretentiondialog, null);
+        maxArticles = (EditText) view.findViewById(R.id.retention_max_articles);
+        maxAge = (EditText) view.findViewById(R.id.retention_max_age);
+
+        // Show the global limits until the feed has its own
+        Controller controller = Controller.getInstance();
+        RetentionEngine.Policy policy = controller.getFeedRetentionPolicies().get(feedId);
+        if (policy == null)
+            policy = new RetentionEngine.Policy(controller.purgeArticleLimit(), controller.purgeArticleMaxAge());
+        maxArticles.setText(String.valueOf(policy.maxArticles));
+        maxAge.setText(String.valueOf(policy.maxAgeDays));
+
+        builder.setTitle(R.string.FeedRetentionTitle).setView(view)
+                .setPositiveButton(R.string.Utils_OkayAction, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        setPolicy(new RetentionEngine.Policy(parse(maxArticles), parse(maxAge)));
+                    }
+                }).setNeutralButton(R.string.FeedRetentionUseGlobal, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        setPolicy(null);
+                    }
+                }).setNegativeButton(R.string.Utils_CancelAction, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int id) {
+                        dismiss();
+                    }
+                });
+
+        return builder.create();
+    }
+
+    private void setPolicy(RetentionEngine.Policy policy) {
+        Controller.getInstance().setFeedRetentionPolicy(feedId, policy);
+        // Select the articles again with the new limits
+        RetentionEngine.getInstance().schedule();
+        dismiss();
+    }
+
+    private static int parse(EditText text) {
+        try {
+            return Math.max(0, Integer.parseInt(text.getText().toString().trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
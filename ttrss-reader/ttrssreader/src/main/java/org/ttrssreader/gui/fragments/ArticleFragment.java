@@ -23,6 +23,7 @@ import org.htmlcleaner.TagNode;
 import org.htmlcleaner.TagNodeVisitor;
 import org.stringtemplate.v4.ST;
 import org.ttrssreader.R;
+import org.ttrssreader.controllers.ArticleContentResolver;
 import org.ttrssreader.controllers.Controller;
 import org.ttrssreader.controllers.DBHelper;
 import org.ttrssreader.controllers.ProgressBarManager;
@@ -263,6 +264,26 @@ public class ArticleFragment extends Fragment implements LoaderManager.LoaderCal
             parentIdsBeforeAndAfter[0] = Integer.MIN_VALUE;
             parentIdsBeforeAndAfter[1] = Integer.MIN_VALUE;
         }
+
+        prefetchArticles(index);
+    }
+
+    /**
+     * prefetch the articles around the given position in parentIds, the nearest ones in the direction of the last move
+     * first
+     */
+    private void prefetchArticles(int index) {
+        List<Integer> ids = new ArrayList<>(ArticleContentResolver.PREFETCH_COUNT * 2);
+        if (index > 0) {
+            int direction = lastMove < 0 ? -1 : 1;
+            for (int i = 1; i <= ArticleContentResolver.PREFETCH_COUNT; i++) {
+                for (int j : new int[]{index + direction * i, index - direction * i}) {
+                    if (j > 0 && j < parentIds.size() - 1)
+                        ids.add(parentIds.get(j));
+                }
+            }
+        }
+        ArticleContentResolver.getInstance().prefetch(ids);
     }
 
     @SuppressLint("ClickableViewAccessibility")
@@ -346,6 +367,10 @@ public class ArticleFragment extends Fragment implements LoaderManager.LoaderCal
         }
         feed = DBHelper.getInstance().getFeed(article.feedId);
 
+        // The article might be stored without content, load it in the background and show it when it arrives
+        if (article.content == null)
+            resolveContent(article.id);
+
         // Mark as read if necessary, do it here because in doRefresh() it will be done several times even if you set
         // it to "unread" in the meantime.
         if (article.isUnread) {
@@ -361,6 +386,30 @@ public class ArticleFragment extends Fragment implements LoaderManager.LoaderCal
         webviewInitialized = false;
     }
 
+    private void resolveContent(final int id) {
+        new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                return ArticleContentResolver.getInstance().resolve(id);
+            }
+
+            @Override
+            protected void onPostExecute(Boolean resolved) {
+                // Another article might have been opened in the meantime
+                if (!resolved || id != articleId || article == null || getActivity() == null)
+                    return;
+
+                Article resolvedArticle = DBHelper.getInstance().getArticle(id);
+                if (resolvedArticle == null)
+                    return;
+
+                article.content = resolvedArticle.content;
+                webviewInitialized = false;
+                doRefresh();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -389,6 +438,7 @@ public class ArticleFragment extends Fragment implements LoaderManager.LoaderCal
                 new Updater(null, new ArticleReadStateUpdater(article, 0))
                         .executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         }
+        ArticleContentResolver.getInstance().cancelPrefetch();
         super.onDestroy();
         if (webContainer != null)
             webContainer.removeAllViews();
@@ -449,6 +499,8 @@ public class ArticleFragment extends Fragment implements LoaderManager.LoaderCal
             contentTemplate.add(MARKER_UPDATED, DateUtils.getDateTimeCustom(getActivity(), article.updated));
             contentTemplate.add(MARKER_CONTENT, article.content);
             // Inject the specific code for attachments, <img> for images, http-link for Videos
+            if (article.attachments == null)
+                article.attachments = DBHelper.getInstance().getAttachments(article.id);
             contentTemplate.add(MARKER_ATTACHMENTS, getAttachmentsMarkup(getActivity(), article.attachments));
 
             webView.getSettings().setJavaScriptEnabled(true);
@@ -20,6 +20,7 @@ package org.ttrssreader.gui.fragments;
 import org.ttrssreader.R;
 import org.ttrssreader.controllers.Controller;
 import org.ttrssreader.controllers.DBHelper;
+import org.ttrssreader.gui.dialogs.FeedRetentionDialog;
 import org.ttrssreader.gui.dialogs.YesNoUpdaterDialog;
 import org.ttrssreader.gui.interfaces.IItemSelectedListener.TYPE;
 import org.ttrssreader.model.FeedAdapter;
@@ -55,6 +56,7 @@ public class FeedListFragment extends MainListFragment {
     private static final int MARK_GROUP = 300;
     private static final int MARK_READ = MARK_GROUP + 1;
     private static final int UNSUBSCRIBE = MARK_GROUP + 2;
+    private static final int RETENTION = MARK_GROUP + 3;
 
     // Extras
     private int categoryId;
@@ -96,6 +98,7 @@ public class FeedListFragment extends MainListFragment {
         super.onCreateContextMenu(menu, v, menuInfo);
         menu.add(MARK_GROUP, MARK_READ, Menu.NONE, R.string.Commons_MarkRead);
         menu.add(MARK_GROUP, UNSUBSCRIBE, Menu.NONE, R.string.Subscribe_unsubscribe);
+        menu.add(MARK_GROUP, RETENTION, Menu.NONE, R.string.Subscribe_retention);
     }
 
     @Override
@@ -115,6 +118,10 @@ public class FeedListFragment extends MainListFragment {
                         R.string.Dialog_unsubscribeText);
                 dialog.show(getFragmentManager(), YesNoUpdaterDialog.DIALOG);
                 return true;
+            case RETENTION:
+                FeedRetentionDialog.newInstance(adapter.getId(cmi.position))
+                        .show(getFragmentManager(), FeedRetentionDialog.DIALOG);
+                return true;
         }
         return false;
     }
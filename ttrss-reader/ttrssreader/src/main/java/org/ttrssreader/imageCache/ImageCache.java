@@ -19,8 +19,14 @@
 
 package org.ttrssreader.imageCache;
 
+import org.ttrssreader.controllers.Controller;
+import org.ttrssreader.controllers.DBHelper;
+import org.ttrssreader.model.pojos.Article;
 import org.ttrssreader.preferences.Constants;
 import org.ttrssreader.utils.AbstractCache;
+import org.ttrssreader.utils.FileUtils;
+import org.ttrssreader.utils.StringSupport;
+import org.ttrssreader.utils.Utils;
 
 import android.graphics.Bitmap;
 import android.os.Environment;
@@ -29,6 +35,7 @@ import android.util.Log;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Set;
 
 /**
  * Implements a cache capable of caching image files. It exposes helper methods to immediately
@@ -110,6 +117,32 @@ public class ImageCache extends AbstractCache<String, byte[]> {
         return cache.containsKey(getFileNameForKey(key)) || (isDiskCacheEnabled && getCacheFile(key).exists());
     }
 
+    /**
+     * download the images of the given article which are not cached yet, blocks until all downloads are done
+     *
+     * @param article the article with its content and attachments
+     */
+    public void cacheImages(Article article) {
+        Set<String> urls = ImageCacher.findUncachedImageUrls(this, article);
+        if (urls.isEmpty())
+            return;
+
+        long maxFileSize = Controller.getInstance().cacheImageMaxSize() * Utils.KB;
+        long minFileSize = Controller.getInstance().cacheImageMinSize() * Utils.KB;
+
+        String[] fileUrls = StringSupport.setToArray(urls);
+        DBHelper.getInstance().insertArticleFiles(article.id, fileUrls);
+        for (String url : fileUrls) {
+            long size = FileUtils.downloadToFile(url, getCacheFile(url), maxFileSize, minFileSize);
+
+            if (size <= 0) {
+                DBHelper.getInstance().markRemoteFileCached(url, false, -size);
+            } else {
+                DBHelper.getInstance().markRemoteFileCached(url, true, size);
+            }
+        }
+    }
+
     /**
      * create uniq string from file url, which can be used as file name
      *
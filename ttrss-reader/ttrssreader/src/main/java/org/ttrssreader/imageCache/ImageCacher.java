@@ -225,25 +225,7 @@ class ImageCacher extends AsyncTask<Void, Integer, Void> {
             int articleId = article.id;
 
             // Log.d(TAG, "Cache images for article ID: " + articleId);
-
-            // Get images included in HTML
-            Set<String> set = new HashSet<>();
-
-            for (String url : findAllImageUrls(article.content)) {
-                if (!imageCache.containsKey(url))
-                    set.add(url);
-            }
-            // Log.d(TAG, "Amount of uncached images for article ID " + articleId + ":" + set.size());
-
-            // Get images from attachments separately
-            for (String url : article.attachments) {
-                for (String ext : FileUtils.IMAGE_EXTENSIONS) {
-                    if (url.toLowerCase(Locale.getDefault()).contains("." + ext) && !imageCache.containsKey(url)) {
-                        set.add(url);
-                        break;
-                    }
-                }
-            }
+            Set<String> set = findUncachedImageUrls(imageCache, article);
             // Log.d(TAG, "Total amount of uncached images for article ID " + articleId + ":" + set.size());
 
             if (!set.isEmpty()) {
@@ -278,6 +260,31 @@ class ImageCacher extends AsyncTask<Void, Integer, Void> {
         Log.i(TAG, "Downloading images took " + (System.currentTimeMillis() - time) + "ms");
     }
 
+    /**
+     * collect the URLs of the images in the content and the image attachments of the given article which are not
+     * cached yet
+     */
+    static Set<String> findUncachedImageUrls(ImageCache imageCache, Article article) {
+        // Get images included in HTML
+        Set<String> set = new HashSet<>();
+
+        for (String url : findAllImageUrls(article.content)) {
+            if (!imageCache.containsKey(url))
+                set.add(url);
+        }
+
+        // Get images from attachments separately
+        for (String url : article.attachments) {
+            for (String ext : FileUtils.IMAGE_EXTENSIONS) {
+                if (url.toLowerCase(Locale.getDefault()).contains("." + ext) && !imageCache.containsKey(url)) {
+                    set.add(url);
+                    break;
+                }
+            }
+        }
+        return set;
+    }
+
     private class DownloadImageTask implements Runnable {
         // Max size for one image
         private final long maxFileSize = Controller.getInstance().cacheImageMaxSize() * Utils.KB;
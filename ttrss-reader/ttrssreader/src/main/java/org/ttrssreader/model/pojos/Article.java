@@ -20,6 +20,8 @@ package org.ttrssreader.model.pojos;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 public class Article implements Comparable<Article> {
@@ -100,7 +102,25 @@ public class Article implements Comparable<Article> {
     public enum ArticleField {
         id, title, unread, updated, feed_id, content, link, comments, attachments, marked, published, labels,
         is_updated, tags, feed_title, comments_count, comments_link, always_display_attachments, author, score, lang,
-        note
+        note;
+
+        private static final Map<String, ArticleField> BY_NAME = new HashMap<>();
+
+        static {
+            for (ArticleField field : values()) {
+                BY_NAME.put(field.name(), field);
+            }
+        }
+
+        /**
+         * like {@link #valueOf(String)} but without throwing an exception for unknown names, newer servers may send
+         * fields which aren't known here
+         *
+         * @return the field with the given name or {@code null} if there is none
+         */
+        public static ArticleField byName(String name) {
+            return BY_NAME.get(name);
+        }
     }
 
 }
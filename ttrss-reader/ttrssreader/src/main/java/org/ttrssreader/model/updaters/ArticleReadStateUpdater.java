@@ -63,7 +63,6 @@ public class ArticleReadStateUpdater implements IUpdatable {
 
             if (!ids.isEmpty()) {
                 DBHelper.getInstance().markArticles(ids, "isUnread", state);
-                Data.getInstance().calculateCounters();
                 Data.getInstance().notifyListeners();
                 Data.getInstance().setArticleRead(ids, state);
             }
@@ -53,7 +53,6 @@ public class PublishedStateUpdater implements IUpdatable {
         if (articleState >= 0) {
             article.isPublished = articleState > 0;
             DBHelper.getInstance().markArticle(article.id, "isPublished", articleState);
-            Data.getInstance().calculateCounters();
             Data.getInstance().notifyListeners();
             Data.getInstance().setArticlePublished(article.id, articleState, note);
         }
@@ -106,7 +106,6 @@ public class ReadStateUpdater implements IUpdatable {
             }
         }
 
-        Data.getInstance().calculateCounters();
         Data.getInstance().notifyListeners();
     }
 
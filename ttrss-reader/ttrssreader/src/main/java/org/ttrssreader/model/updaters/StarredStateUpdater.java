@@ -42,7 +42,6 @@ public class StarredStateUpdater implements IUpdatable {
         if (articleState >= 0) {
             article.isStarred = articleState > 0;
             DBHelper.getInstance().markArticle(article.id, "isStarred", articleState);
-            Data.getInstance().calculateCounters();
             Data.getInstance().notifyListeners();
             Data.getInstance().setArticleStarred(article.id, articleState);
         }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.net;
+
+import java.util.Map;
+
+/**
+ * A single call of the tt-rss API. The error of the call is kept here instead of in the connector, so calls which run
+ * at the same time don't see each other's errors.
+ */
+public class ApiRequest {
+
+    private final Map<String, String> params;
+
+    /**
+     * the session ID the request was sent with
+     */
+    private String sessionId;
+    private String error;
+    private boolean unreachable = false;
+
+    /**
+     * the read timeout of the current attempt in milliseconds
+     */
+    private int readTimeout;
+
+    ApiRequest(Map<String, String> params) {
+        this.params = params;
+    }
+
+    public Map<String, String> getParams() {
+        return params;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * mark the request as failed, only the first error is kept since later ones are usually caused by it
+     *
+     * @param message the error message
+     */
+    public void fail(String message) {
+        if (error == null)
+            error = message;
+    }
+
+    /**
+     * mark the request as failed because the server couldn't be reached (timeout, broken connection, server error),
+     * such requests are sent again
+     *
+     * @param message the error message
+     */
+    public void failUnreachable(String message) {
+        if (error == null) {
+            error = message;
+            unreachable = true;
+        }
+    }
+
+    /**
+     * @return {@code true} if the request failed because the server couldn't be reached
+     */
+    boolean isUnreachable() {
+        return unreachable;
+    }
+
+    /**
+     * forget the error of the last attempt before the request is sent again
+     */
+    void reset() {
+        error = null;
+        unreachable = false;
+    }
+
+    public boolean hasFailed() {
+        return error != null;
+    }
+
+    /**
+     * @return the error message or {@code null} if the request didn't fail
+     */
+    public String getError() {
+        return error;
+    }
+
+}
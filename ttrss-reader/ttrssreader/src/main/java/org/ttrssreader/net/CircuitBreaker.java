@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.net;
+
+import org.ttrssreader.utils.Utils;
+
+/**
+ * Stops sending requests after several requests in a row failed because the server couldn't be reached. Once a
+ * waiting time has passed a single probe is let through, if it succeeds requests are sent again, otherwise the
+ * waiting time is doubled.
+ */
+class CircuitBreaker {
+
+    /**
+     * number of failed requests in a row which open the breaker
+     */
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long MIN_OPEN_TIME = 15 * Utils.SECOND;
+    private static final long MAX_OPEN_TIME = 5 * Utils.MINUTE;
+
+    enum Permission {
+        /**
+         * the request may be sent
+         */
+        SEND,
+        /**
+         * the server has to be probed before the request is sent
+         */
+        PROBE,
+        /**
+         * the request must not be sent
+         */
+        REJECT
+    }
+
+    private int failures = 0;
+    private long openTime = 0;
+    private long openUntil = 0;
+    private boolean probing = false;
+
+    synchronized Permission acquire() {
+        if (failures < FAILURE_THRESHOLD)
+            return Permission.SEND;
+        if (probing || System.currentTimeMillis() < openUntil)
+            return Permission.REJECT;
+
+        probing = true;
+        return Permission.PROBE;
+    }
+
+    /**
+     * @return {@code true} if requests are rejected at the moment, {@code false} if they are sent or the next one
+     * will probe the server
+     */
+    synchronized boolean isOpen() {
+        return failures >= FAILURE_THRESHOLD && (probing || System.currentTimeMillis() < openUntil);
+    }
+
+    /**
+     * @return milliseconds until the server is probed again
+     */
+    synchronized long getRemainingOpenTime() {
+        return Math.max(0, openUntil - System.currentTimeMillis());
+    }
+
+    /**
+     * the server answered, no matter if the answer was an error
+     */
+    synchronized void onSuccess() {
+        failures = 0;
+        openTime = 0;
+        probing = false;
+    }
+
+    /**
+     * the server couldn't be reached
+     *
+     * @param probe {@code true} if the failed request was the probe
+     */
+    synchronized void onFailure(boolean probe) {
+        failures++;
+        if (probe)
+            probing = false;
+        // Requests which were already running when the breaker opened don't extend the waiting time
+        if (failures == FAILURE_THRESHOLD || probe) {
+            openTime = (openTime == 0) ? MIN_OPEN_TIME : Math.min(openTime * 2, MAX_OPEN_TIME);
+            openUntil = System.currentTimeMillis() + openTime;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.net;
+
+import org.ttrssreader.model.pojos.Article;
+
+/**
+ * this interface is supposed to be used inside parseArticleArray of JSONConnector. The {@code receiveArticle} method
+ * will be called for each completely parsed article, which was not omitted, so articles can be processed while the
+ * response is still being read instead of collecting all of them in memory first.
+ */
+public interface IArticleReceiver {
+    /**
+     * this method is called for every parsed article, which should be processed
+     *
+     * @param a the parsed article
+     */
+    public void receiveArticle(Article a);
+}
@@ -19,10 +19,10 @@ package org.ttrssreader.net;
 
 import org.ttrssreader.controllers.DBHelper;
 import org.ttrssreader.model.pojos.Article;
+import org.ttrssreader.utils.IntHashSet;
+import org.ttrssreader.utils.IntLongHashMap;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * the instance of this class will be used for filtering out already cached articles, which was not updated while
@@ -32,15 +32,20 @@ import java.util.Set;
  */
 public class IdUpdatedArticleOmitter implements IArticleOmitter {
 
+    /**
+     * map of the last released omitter, reused by the next one instead of allocating the arrays again
+     */
+    private static final AtomicReference<IntLongHashMap> spareMap = new AtomicReference<>();
+
     /**
      * map of article IDs to it's updated date
      */
-    private Map<Integer, Long> idUpdatedMap;
+    private IntLongHashMap idUpdatedMap;
 
     /**
      * articles, which was skipped
      */
-    private Set<Integer> omittedArticles;
+    private IntHashSet omittedArticles;
 
     /**
      * construct the object according to selection parameters
@@ -54,8 +59,23 @@ public class IdUpdatedArticleOmitter implements IArticleOmitter {
      *                      that they appear in the selection. The values will be bound as Strings.
      */
     public IdUpdatedArticleOmitter(String selection, String[] selectionArgs) {
-        idUpdatedMap = DBHelper.getInstance().getArticleIdUpdatedMap(selection, selectionArgs);
-        omittedArticles = new HashSet<>();
+        IntLongHashMap map = spareMap.getAndSet(null);
+        if (map == null)
+            map = new IntLongHashMap();
+        else
+            map.clear();
+
+        idUpdatedMap = DBHelper.getInstance().getArticleIdUpdatedMap(map, selection, selectionArgs);
+        omittedArticles = new IntHashSet();
+    }
+
+    /**
+     * hand the map of article IDs back for reuse by the next omitter, this object must not be used afterwards
+     */
+    public void release() {
+        if (idUpdatedMap != null)
+            spareMap.set(idUpdatedMap);
+        idUpdatedMap = null;
     }
 
     /**
@@ -74,8 +94,8 @@ public class IdUpdatedArticleOmitter implements IArticleOmitter {
             case id:
             case updated:
                 if (a.id > 0 && a.updated != null) {
-                    Long updated = idUpdatedMap.get(a.id);
-                    if (updated != null && a.updated.getTime() <= updated) {
+                    long updated = idUpdatedMap.get(a.id, Long.MIN_VALUE);
+                    if (updated != Long.MIN_VALUE && a.updated.getTime() <= updated) {
                         skip = true;
                         omittedArticles.add(a.id);
                     }
@@ -92,7 +112,7 @@ public class IdUpdatedArticleOmitter implements IArticleOmitter {
      *
      * @return the idUpdatedMap
      */
-    public Map<Integer, Long> getIdUpdatedMap() {
+    public IntLongHashMap getIdUpdatedMap() {
         return idUpdatedMap;
     }
 
@@ -101,7 +121,7 @@ public class IdUpdatedArticleOmitter implements IArticleOmitter {
      *
      * @return the omittedArticles
      */
-    public Set<Integer> getOmittedArticles() {
+    public IntHashSet getOmittedArticles() {
         return omittedArticles;
     }
 }
@@ -22,6 +22,7 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.MalformedJsonException;
 
+import org.apache.commons.io.IOUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.ttrssreader.controllers.Controller;
@@ -36,25 +37,38 @@ import org.ttrssreader.utils.Utils;
 import android.util.Base64;
 import android.util.Log;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class JSONConnector {
 
     private static final String TAG = JSONConnector.class.getSimpleName();
 
-    protected static String lastError = "";
-    protected static boolean hasLastError = false;
-
-    private static final String PARAM_OP = "op";
+    protected static final String PARAM_OP = "op";
     private static final String PARAM_USER = "user";
     private static final String PARAM_PW = "password";
     private static final String PARAM_CAT_ID = "cat_id";
@@ -62,6 +76,7 @@ public abstract class JSONConnector {
     private static final String PARAM_FEED_ID = "feed_id";
     private static final String PARAM_FEED_URL = "feed_url";
     private static final String PARAM_ARTICLE_IDS = "article_ids";
+    private static final String PARAM_ARTICLE_ID = "article_id";
     private static final String PARAM_LIMIT = "limit";
     private static final int PARAM_LIMIT_API_5 = 60;
     private static final String PARAM_VIEWMODE = "view_mode";
@@ -83,11 +98,13 @@ public abstract class JSONConnector {
     private static final String VALUE_GET_CATEGORIES = "getCategories";
     private static final String VALUE_GET_FEEDS = "getFeeds";
     private static final String VALUE_GET_HEADLINES = "getHeadlines";
+    private static final String VALUE_GET_ARTICLE = "getArticle";
     private static final String VALUE_UPDATE_ARTICLE = "updateArticle";
     private static final String VALUE_CATCHUP = "catchupFeed";
-    private static final String VALUE_UPDATE_FEED = "updateFeed";
+    protected static final String VALUE_UPDATE_FEED = "updateFeed";
     private static final String VALUE_GET_PREF = "getPref";
     private static final String VALUE_SET_LABELS = "setArticleLabel";
+    private static final String VALUE_IS_LOGGED_IN = "isLoggedIn";
     private static final String VALUE_SHARE_TO_PUBLISHED = "shareToPublished";
     private static final String VALUE_FEED_SUBSCRIBE = "subscribeToFeed";
     private static final String VALUE_FEED_UNSUBSCRIBE = "unsubscribeFeed";
@@ -105,6 +122,8 @@ public abstract class JSONConnector {
     private static final String API_DISABLED = "API_DISABLED";
     private static final String API_DISABLED_MESSAGE
             = "Please enable API for the user \"%s\" in the preferences of this user on the Server.";
+    private static final String UNREACHABLE_MESSAGE
+            = "The server couldn't be reached several times, trying again in %s seconds.";
     private static final String STATUS = "status";
     private static final String API_LEVEL = "api_level";
 
@@ -127,22 +146,60 @@ public abstract class JSONConnector {
 
     private static final int MAX_ID_LIST_LENGTH = 100;
 
+    /** read timeout for updating a single feed on the lazy server */
+    protected static final long UPDATE_FEED_TIMEOUT = 2 * Utils.MINUTE;
+
+    /** maximum number of requests for different notes which are sent at the same time */
+    private static final int MAX_PARALLEL_NOTE_REQUESTS = 3;
+
+    /** attempts to send a request if the server can't be reached */
+    private static final int MAX_ATTEMPTS = 3;
+    /** the waiting time before the second attempt, it is doubled for every further attempt and randomized */
+    private static final long RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = 5 * Utils.SECOND;
+
+    /** the read timeout is this factor times the 95th percentile of the latest response times of the operation */
+    private static final int TIMEOUT_FACTOR = 4;
+    private static final long MIN_TIMEOUT = 5 * Utils.SECOND;
+    private static final long MAX_TIMEOUT = Utils.MINUTE;
+
     protected static final String SID = "sid"; // session id as an IN parameter
 
     protected boolean httpAuth = false;
     protected String httpUsername;
     protected String httpPassword;
 
-    protected String sessionId = null;
+    private volatile String sessionId = null;
+
+    /**
+     * the last error of any request, it is kept until it is pulled to be shown to the user
+     */
+    private final AtomicReference<String> lastError = new AtomicReference<>();
 
     private final Object lock = new Object();
-    private int apiLevel = -1;
+    private volatile int apiLevel = -1;
+
+    private final LatencyTracker latency = new LatencyTracker();
+    private final CircuitBreaker breaker = new CircuitBreaker();
+    private final Random random = new Random();
 
     public static final int PARAM_LIMIT_MAX_VALUE = 200;
 
-    protected abstract InputStream doRequest(Map<String, String> params);
+    /**
+     * send the request to the server, errors are recorded in the request
+     *
+     * @return the response or {@code null} if the request failed
+     */
+    protected abstract InputStream doRequest(ApiRequest request);
 
     public void init() {
+        // Reuse the session of the last run, if the server doesn't accept it anymore we log in again
+        String storedSessionId = Controller.getInstance().getSessionId();
+        if (storedSessionId != null && sessionId == null) {
+            sessionId = storedSessionId;
+            apiLevel = Controller.getInstance().getSessionApiLevel();
+        }
+
         httpAuth = Controller.getInstance().useHttpAuth();
         if (!httpAuth)
             return;
@@ -157,6 +214,19 @@ public abstract class JSONConnector {
         httpPassword = Controller.getInstance().httpPassword();
     }
 
+    protected void logRequest(final Map<String, String> params) {
+        // Filter password and session-id
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            if (PARAM_PW.equals(param.getKey()) || SID.equals(param.getKey()))
+                continue;
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(param.getKey()).append('=').append(param.getValue());
+        }
+        Log.i(TAG, sb.toString());
+    }
+
     protected void logRequest(final JSONObject json) throws JSONException {
         // Filter password and session-id
         Object paramPw = json.remove(PARAM_PW);
@@ -166,19 +236,150 @@ public abstract class JSONConnector {
         json.put(SID, paramSID);
     }
 
-    private String readResult(Map<String, String> params, boolean login) throws IOException {
-        return readResult(params, login, true);
+    /**
+     * send the request with the current session ID, the ID is remembered so a request which finds its session expired
+     * can tell whether another request has already logged in again.
+     * <p>
+     * If the server can't be reached the request is sent again after a randomized, growing delay with a longer
+     * timeout. After several failures in a row requests fail immediately until a probe finds the server reachable
+     * again.
+     */
+    private InputStream send(ApiRequest request) {
+        String op = request.getParams().get(PARAM_OP);
+        int attempts = VALUE_SHARE_TO_PUBLISHED.equals(op) ? 1 : MAX_ATTEMPTS; // Sharing twice creates two articles
+        long timeout = readTimeout(op);
+
+        for (int attempt = 1; ; attempt++) {
+            CircuitBreaker.Permission permission = breaker.acquire();
+            if (permission == CircuitBreaker.Permission.REJECT || (permission == CircuitBreaker.Permission.PROBE
+                    && !probe())) {
+                request.failUnreachable(String.format(UNREACHABLE_MESSAGE,
+                        breaker.getRemainingOpenTime() / Utils.SECOND));
+                return null;
+            }
+
+            if (!VALUE_LOGIN.equals(op)) {
+                String sid = sessionId;
+                request.setSessionId(sid);
+                if (sid != null)
+                    request.getParams().put(SID, sid);
+            }
+            request.setReadTimeout((int) timeout);
+
+            long time = System.currentTimeMillis();
+            InputStream in = doRequest(request);
+            if (!request.isUnreachable()) {
+                // The server answered, even if it was with an error
+                latency.add(op, System.currentTimeMillis() - time);
+                breaker.onSuccess();
+                return in;
+            }
+
+            // A cancelled request doesn't tell anything about the server
+            if (Thread.currentThread().isInterrupted())
+                return null;
+
+            breaker.onFailure(false);
+            Log.w(TAG, String.format("%s failed (attempt %s of %s): %s", op, attempt, attempts, request.getError()));
+            if (attempt >= attempts)
+                return null;
+
+            long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << (attempt - 1));
+            try {
+                Thread.sleep(delay / 2 + (long) (random.nextDouble() * delay / 2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            // The request may just have been slower than usual, give the next attempt more time
+            timeout = Math.min(timeout * 2, Math.max(defaultReadTimeout(op), MAX_TIMEOUT));
+            request.reset();
+        }
+    }
+
+    /**
+     * check with a small request whether the server can be reached again
+     */
+    private boolean probe() {
+        Map<String, String> params = new HashMap<>();
+        params.put(PARAM_OP, VALUE_IS_LOGGED_IN);
+        String sid = sessionId;
+        if (sid != null)
+            params.put(SID, sid);
+        ApiRequest request = new ApiRequest(params);
+        request.setReadTimeout((int) MIN_TIMEOUT);
+
+        InputStream in = doRequest(request);
+        IOUtils.closeQuietly(in);
+        if (request.isUnreachable()) {
+            breaker.onFailure(true);
+            return false;
+        }
+        breaker.onSuccess();
+        return true;
+    }
+
+    /**
+     * @return the read timeout for the given operation in milliseconds, derived from the latest response times of the
+     * operation once there are enough of them
+     */
+    private long readTimeout(String op) {
+        long defaultTimeout = defaultReadTimeout(op);
+        long p95 = latency.percentile(op, 0.95);
+        if (p95 < 0)
+            return defaultTimeout;
+
+        // A slow server gets more time than by default, up to a minute or the default if that is longer
+        long max = Math.max(defaultTimeout, MAX_TIMEOUT);
+        return Math.max(MIN_TIMEOUT, Math.min(p95 * TIMEOUT_FACTOR, max));
+    }
+
+    private static long defaultReadTimeout(String op) {
+        // Feeds are updated in parallel on the lazy server, a single slow feed must not hold up the others
+        if (VALUE_UPDATE_FEED.equals(op))
+            return UPDATE_FEED_TIMEOUT;
+        // Use longer timeout when lazyServer-Feature is used
+        return Controller.getInstance().lazyServer() ? 15 * Utils.MINUTE : 10 * Utils.SECOND;
     }
 
-    private String readResult(Map<String, String> params, boolean login, boolean retry) throws IOException {
-        InputStream in = doRequest(params);
+    /**
+     * @return {@code true} if the server couldn't be reached several times in a row and requests are not sent at the
+     * moment
+     */
+    public boolean isServerUnreachable() {
+        return breaker.isOpen();
+    }
+
+    /**
+     * @return milliseconds until the unreachable server is probed again, 0 if it isn't considered unreachable or is
+     * being probed right now
+     */
+    public long getServerUnreachableTime() {
+        return breaker.isOpen() ? breaker.getRemainingOpenTime() : 0;
+    }
+
+    /**
+     * keep the error of the given request, if it failed, so it can be shown to the user
+     */
+    private void reportError(ApiRequest request) {
+        if (request.hasFailed())
+            lastError.set(request.getError());
+    }
+
+    private String readResult(ApiRequest request, boolean login) throws IOException {
+        return readResult(request, login, true);
+    }
+
+    private String readResult(ApiRequest request, boolean login, boolean retry) throws IOException {
+        InputStream in = send(request);
         if (in == null)
             return null;
 
         JsonReader reader = null;
         String ret = "";
         try {
-            reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+            reader = new JsonReader(new Utf8Reader(in));
             // Check if content contains array or object, array indicates login-response or error, object is content
 
             reader.beginObject();
@@ -212,24 +413,22 @@ public abstract class JSONConnector {
                             String message = object.get(ERROR).getAsString();
 
                             if (message.contains(NOT_LOGGED_IN)) {
-                                if (!login && retry && login()) {
-                                    return readResult(params, false, false); // Just do the same request again
+                                if (!login && retry && login(request.getSessionId())) {
+                                    return readResult(request, false, false); // Just do the same request again
                                 } else {
-                                    hasLastError = true;
-                                    lastError = message;
+                                    request.fail(message);
                                     return null;
                                 }
                             }
 
                             if (message.contains(API_DISABLED)) {
-                                hasLastError = true;
-                                lastError = String.format(API_DISABLED_MESSAGE, Controller.getInstance().username());
+                                request.fail(String.format(API_DISABLED_MESSAGE,
+                                        Controller.getInstance().username()));
                                 return null;
                             }
 
                             // Any other error
-                            hasLastError = true;
-                            lastError = message;
+                            request.fail(message);
                             return null;
                         }
                     }
@@ -250,15 +449,23 @@ public abstract class JSONConnector {
         return ret;
     }
 
-    private JsonReader prepareReader(Map<String, String> params) throws IOException {
-        return prepareReader(params, true);
+    private JsonReader prepareReader(ApiRequest request) throws IOException {
+        return prepareReader(request, send(request));
+    }
+
+    /**
+     * @param in the response to the given request, the request is only repeated if the session has expired
+     */
+    private JsonReader prepareReader(ApiRequest request, InputStream in) throws IOException {
+        JsonReader reader = prepareReader(request, in, true);
+        reportError(request);
+        return reader;
     }
 
-    private JsonReader prepareReader(Map<String, String> params, boolean firstCall) throws IOException {
-        InputStream in = doRequest(params);
+    private JsonReader prepareReader(ApiRequest request, InputStream in, boolean firstCall) throws IOException {
         if (in == null)
             return null;
-        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        JsonReader reader = new JsonReader(new Utf8Reader(in));
 
         // Check if content contains array or object, array indicates login-response or error, object is content
         try {
@@ -299,22 +506,21 @@ public abstract class JSONConnector {
                         String message = object.get(ERROR).toString();
 
                         if (message.contains(NOT_LOGGED_IN)) {
-                            lastError = NOT_LOGGED_IN;
-                            if (firstCall && login() && !hasLastError)
-                                return prepareReader(params, false); // Just do the same request again
-                            else
-                                return null;
+                            reader.close();
+                            if (firstCall && login(request.getSessionId()))
+                                return prepareReader(request, send(request), false); // Just do the same request again
+
+                            request.fail(message);
+                            return null;
                         }
 
                         if (message.contains(API_DISABLED)) {
-                            hasLastError = true;
-                            lastError = String.format(API_DISABLED_MESSAGE, Controller.getInstance().username());
+                            request.fail(String.format(API_DISABLED_MESSAGE, Controller.getInstance().username()));
                             return null;
                         }
 
                         // Any other error
-                        hasLastError = true;
-                        lastError = message;
+                        request.fail(message);
                     }
                 }
 
@@ -325,12 +531,16 @@ public abstract class JSONConnector {
         return null;
     }
 
+    /**
+     * log in if there is no session yet, so the first request doesn't have to wait for it
+     */
+    public void prepareSession() {
+        sessionAlive();
+    }
+
     private boolean sessionAlive() {
         // Make sure we are logged in
-        if (sessionId == null || lastError.equals(NOT_LOGGED_IN))
-            if (!login())
-                return false;
-        return !hasLastError;
+        return sessionId != null || login(null);
     }
 
     /**
@@ -342,77 +552,82 @@ public abstract class JSONConnector {
         if (!sessionAlive())
             return false;
 
+        ApiRequest request = new ApiRequest(params);
         try {
-            String result = readResult(params, false);
-
-            // Reset error, this is only for an api-bug which returns an empty result for updateFeed
-            if (result == null)
-                pullLastError();
-
+            // Errors are not reported if there is no result, this is only for an api-bug which returns an empty
+            // result for updateFeed
+            String result = readResult(request, false);
             return "OK".equals(result);
         } catch (MalformedJsonException mje) {
-            // Reset error, this is only for an api-bug which returns an empty result for updateFeed
-            pullLastError();
+            // Not reported either, see above
         } catch (IOException e) {
             e.printStackTrace();
-            if (!hasLastError) {
-                hasLastError = true;
-                lastError = formatException(e);
-            }
+            request.fail(formatException(e));
+            reportError(request);
         }
 
         return false;
     }
 
     /**
-     * Tries to login to the ttrss-server with the base64-encoded password.
+     * Tries to login to the ttrss-server with the base64-encoded password. If several requests find their session
+     * expired at the same time only the first one logs in again, the others wait for it and use the new session.
      *
+     * @param expiredSessionId the session ID which was not accepted by the server anymore, {@code null} if there was
+     *                         none
      * @return true on success, false otherwise
      */
-    private boolean login() {
+    private boolean login(String expiredSessionId) {
         long time = System.currentTimeMillis();
 
         // Just login once, check if already logged in after acquiring the lock on mSessionId
-        if (sessionId != null && !lastError.equals(NOT_LOGGED_IN))
+        if (isSessionRenewed(expiredSessionId))
             return true;
 
         synchronized (lock) {
-            try {
-                if (sessionId != null && !lastError.equals(NOT_LOGGED_IN))
-                    return true; // Login done while we were waiting for the lock
+            if (isSessionRenewed(expiredSessionId))
+                return true; // Login done while we were waiting for the lock
+
+            sessionId = null;
 
-                Map<String, String> params = new HashMap<>();
-                params.put(PARAM_OP, VALUE_LOGIN);
-                params.put(PARAM_USER, Controller.getInstance().username());
+            Map<String, String> params = new HashMap<>();
+            params.put(PARAM_OP, VALUE_LOGIN);
+            params.put(PARAM_USER, Controller.getInstance().username());
+            ApiRequest request = new ApiRequest(params);
+
+            try {
                 params.put(PARAM_PW,
                         Base64.encodeToString(Controller.getInstance().password().getBytes("UTF-8"), Base64.NO_WRAP));
 
-                try {
-                    sessionId = readResult(params, true, false);
-                    if (sessionId != null) {
-                        Log.d(TAG, "login: " + (System.currentTimeMillis() - time) + "ms");
-                        return true;
-                    }
-                } catch (IOException e) {
-                    if (!hasLastError) {
-                        hasLastError = true;
-                        lastError = formatException(e);
-                    }
-                }
-
-                if (!hasLastError) {
-                    // Login didnt succeed, write message
-                    hasLastError = true;
-                    lastError = NOT_LOGGED_IN_MESSAGE;
+                String result = readResult(request, true, false);
+                if (result != null) {
+                    sessionId = result;
+                    Controller.getInstance().setSession(result, apiLevel);
+                    Log.d(TAG, "login: " + (System.currentTimeMillis() - time) + "ms");
+                    return true;
                 }
             } catch (UnsupportedEncodingException e) {
-                hasLastError = true;
-                lastError = ENCODE_PASSWORD;
+                request.fail(ENCODE_PASSWORD);
+            } catch (IOException e) {
+                request.fail(formatException(e));
             }
+
+            // Login didnt succeed, write message
+            Controller.getInstance().setSession(null, -1);
+            request.fail(NOT_LOGGED_IN_MESSAGE);
+            reportError(request);
             return false;
         }
     }
 
+    /**
+     * @return {@code true} if there is a session which is different from the given expired one
+     */
+    private boolean isSessionRenewed(String expiredSessionId) {
+        String current = sessionId;
+        return current != null && !current.equals(expiredSessionId);
+    }
+
     // ***************** Helper-Methods **************************************************
 
     private Set<String> parseAttachments(JsonReader reader) throws IOException {
@@ -456,15 +671,17 @@ public abstract class JSONConnector {
     /**
      * parse articles from JSON-reader
      *
-     * @param articles  container, where parsed articles will be stored
+     * @param receiver  receiver, which gets the parsed articles one by one
      * @param reader    JSON-reader, containing articles (received from server)
      * @param skipNames set of names (article properties), which should not be processed (may be {@code null})
      * @param filter    filter for articles, defining which articles should be omitted while parsing (may be {@code
      *                  null})
-     * @return amount of processed articles
+     * @return amount of processed articles, -1 if the articles could not be parsed completely (the articles parsed
+     * until then have already been handed to the receiver)
+     * @throws StopJsonParsingException if the filter decided that no further articles are needed
      */
-    private int parseArticleArray(final Set<Article> articles, JsonReader reader, Set<Article.ArticleField> skipNames,
-            IArticleOmitter filter) {
+    private int parseArticleArray(final IArticleReceiver receiver, JsonReader reader,
+            Set<Article.ArticleField> skipNames, IArticleOmitter filter) throws StopJsonParsingException {
         long time = System.currentTimeMillis();
         int count = 0;
 
@@ -486,14 +703,15 @@ public abstract class JSONConnector {
                     }
 
                     String name = reader.nextName();
+                    Article.ArticleField field = Article.ArticleField.byName(name);
 
-                    try {
-                        Article.ArticleField field = Article.ArticleField.valueOf(name);
+                    // Unknown fields of newer servers and unwanted fields are skipped without decoding their values
+                    if (field == null || (skipNames != null && skipNames.contains(field))) {
+                        reader.skipValue();
+                        continue;
+                    }
 
-                        if (skipNames != null && skipNames.contains(field)) {
-                            reader.skipValue();
-                            continue;
-                        }
+                    try {
 
                         switch (field) {
                             case id:
@@ -555,7 +773,7 @@ public abstract class JSONConnector {
 
                         if (filter != null)
                             skipObject = filter.omitArticle(field, a);
-                    } catch (IllegalArgumentException e) {
+                    } catch (IllegalArgumentException | IllegalStateException e) {
                         Log.w(TAG, "Result contained illegal value for entry \"" + name + "\".");
                         reader.skipValue();
                     }
@@ -564,7 +782,7 @@ public abstract class JSONConnector {
                 reader.endObject();
 
                 if (!skipObject && a.id != -1 && a.title != null) {
-                    articles.add(a);
+                    receiver.receiveArticle(a);
                 }
 
                 count++;
@@ -572,10 +790,14 @@ public abstract class JSONConnector {
             reader.endArray();
         } catch (StopJsonParsingException e) {
             Log.i(TAG, "Parsing of aricle array was broken after " + count + " articles");
+            throw e;
         } catch (OutOfMemoryError e) {
             Controller.getInstance().lowMemory(true); // Low memory detected
+            Log.e(TAG, "Out of memory after parsing " + count + " articles");
+            return -1;
         } catch (Exception e) {
             Log.e(TAG, "Input data could not be read: " + e.getMessage() + " (" + e.getCause() + ")", e);
+            return -1;
         }
 
         Log.d(TAG, String.format("parseArticleArray: parsing %s articles took %s ms", count,
@@ -644,7 +866,7 @@ public abstract class JSONConnector {
 
         JsonReader reader = null;
         try {
-            reader = prepareReader(params);
+            reader = prepareReader(new ApiRequest(params));
 
             if (reader == null)
                 return ret;
@@ -727,7 +949,7 @@ public abstract class JSONConnector {
 
         JsonReader reader = null;
         try {
-            reader = prepareReader(params);
+            reader = prepareReader(new ApiRequest(params));
 
             if (reader == null)
                 return ret;
@@ -816,14 +1038,79 @@ public abstract class JSONConnector {
     private long noTaskUntil = 0;
     final static private long minTaskIntervall = 10 * Utils.MINUTE;
 
+    /** feeds which haven't been opened recently are updated less often */
+    private static final long LAZY_UPDATE_INTERVAL_NOT_OPENED = 60 * Utils.MINUTE;
+    /** feeds which couldn't be updated within this time are left for the next sync */
+    private static final long LAZY_UPDATE_BUDGET = 2 * Utils.MINUTE;
+
+    /**
+     * update the feeds on the lazy server in parallel. Feeds which have been updated recently are skipped, recently
+     * opened feeds are updated first and more often than the others.
+     */
     private void makeLazyServerWork() {
         final long time = System.currentTimeMillis();
-        if (Controller.getInstance().lazyServer() && (noTaskUntil < time)) {
-            noTaskUntil = time + minTaskIntervall;
-            for (Feed feed : getFeeds(true)) {
-                makeLazyServerWork(feed.id);
+        if (!Controller.getInstance().lazyServer() || (noTaskUntil >= time))
+            return;
+        noTaskUntil = time + minTaskIntervall;
+
+        Map<Integer, Long> lastUpdates = Controller.getInstance().getLazyServerFeedUpdates();
+        // Only keep the update times of existing feeds
+        final Map<Integer, Long> feedUpdates = new ConcurrentHashMap<>();
+        Set<Integer> openedFeeds = Controller.getInstance().lastOpenedFeeds;
+
+        List<Integer> feedIds = new ArrayList<>();
+        List<Integer> otherFeedIds = new ArrayList<>();
+        for (Feed feed : getFeeds(true)) {
+            // Labels can't be updated
+            if (feed.id <= 0)
+                continue;
+
+            Long lastUpdate = lastUpdates.get(feed.id);
+            if (lastUpdate != null)
+                feedUpdates.put(feed.id, lastUpdate);
+
+            boolean opened = openedFeeds.contains(feed.id);
+            long interval = opened ? minTaskIntervall : LAZY_UPDATE_INTERVAL_NOT_OPENED;
+            if (lastUpdate != null && lastUpdate > time - interval)
+                continue;
+
+            if (opened)
+                feedIds.add(feed.id);
+            else
+                otherFeedIds.add(feed.id);
+        }
+        feedIds.addAll(otherFeedIds);
+
+        final AtomicInteger updated = new AtomicInteger();
+        if (!feedIds.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+                    Controller.getInstance().lazyServerConcurrency(), feedIds.size()));
+            for (final Integer feedId : feedIds) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (makeLazyServerWork(feedId)) {
+                            feedUpdates.put(feedId, System.currentTimeMillis());
+                            updated.incrementAndGet();
+                        }
+                    }
+                });
+            }
+
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(LAZY_UPDATE_BUDGET, TimeUnit.MILLISECONDS))
+                    Log.w(TAG, "makeLazyServerWork: time budget exceeded, remaining feeds are updated next time");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
             }
         }
+
+        Controller.getInstance().setLazyServerFeedUpdates(feedUpdates);
+        Log.d(TAG, String.format("makeLazyServerWork: updated %s of %s feeds in %sms", updated.get(), feedIds.size(),
+                System.currentTimeMillis() - time));
     }
 
     /**
@@ -845,60 +1132,240 @@ public abstract class JSONConnector {
      */
     public void getHeadlines(final Set<Article> articles, Integer id, int limit, String viewMode, boolean isCategory,
             Integer sinceId, String search, Set<Article.ArticleField> skipProperties, IArticleOmitter filter) {
+        IArticleReceiver receiver = new IArticleReceiver() {
+            @Override
+            public void receiveArticle(Article a) {
+                articles.add(a);
+            }
+        };
+        getHeadlines(receiver, id, limit, viewMode, isCategory, sinceId, search, skipProperties, filter);
+    }
+
+    /**
+     * Retrieves the specified articles and hands them to the given receiver as soon as they are parsed.
+     *
+     * @param receiver       receiver for retrieved articles
+     * @param id             the id of the feed/category
+     * @param limit          the maximum number of articles to be fetched
+     * @param viewMode       indicates wether only unread articles should be included (Possible values: all_articles,
+     *                       unread,
+     *                       adaptive, marked, updated)
+     * @param isCategory     indicates if we are dealing with a category or a feed
+     * @param sinceId        the first ArticleId which is to be retrieved.
+     * @param search         search query
+     * @param skipProperties set of article fields, which should not be parsed (may be {@code null})
+     * @param filter         filter for articles, defining which articles should be omitted while parsing (may be
+     *                       {@code
+     *                       null})
+     * @return {@code true} if all requested pages were received, {@code false} if a request failed
+     */
+    public boolean getHeadlines(final IArticleReceiver receiver, Integer id, int limit, String viewMode,
+            boolean isCategory, Integer sinceId, String search, Set<Article.ArticleField> skipProperties,
+            IArticleOmitter filter) {
         long time = System.currentTimeMillis();
-        int offset = 0;
-        int count;
-        int maxSize = articles.size() + limit;
+        CountingReceiver articles = new CountingReceiver(receiver);
 
         if (!sessionAlive())
-            return;
+            return false;
 
         int limitParam = Math.min((apiLevel < 6) ? PARAM_LIMIT_API_5 : PARAM_LIMIT_MAX_VALUE, limit);
 
         makeLazyServerWork(id);
 
-        while (articles.size() < maxSize) {
+        // The following pages are requested while the current one is parsed, the pages are parsed in the order of
+        // their offsets so the articles are handed on in the same order as before
+        int depth = Controller.getInstance().headlinesPipelineDepth();
+        ExecutorService executor = Executors.newFixedThreadPool(depth);
+        Deque<HeadlinesPage> pending = new ArrayDeque<>(depth);
+        int offset = 0;
+        boolean complete = true;
 
-            Map<String, String> params = new HashMap<>();
-            params.put(PARAM_OP, VALUE_GET_HEADLINES);
-            params.put(PARAM_FEED_ID, id + "");
-            params.put(PARAM_LIMIT, limitParam + "");
-            params.put(PARAM_SKIP, offset + "");
-            params.put(PARAM_VIEWMODE, viewMode);
-            // params.put(PARAM_ORDERBY, "feed_dates");
+        try {
+            while (true) {
+                // Request as many pages as may still be needed to reach the limit
+                while (pending.size() < depth && articles.count + pending.size() * limitParam < limit) {
+                    Map<String, String> params = new HashMap<>();
+                    params.put(PARAM_OP, VALUE_GET_HEADLINES);
+                    params.put(PARAM_FEED_ID, id + "");
+                    params.put(PARAM_LIMIT, limitParam + "");
+                    params.put(PARAM_SKIP, offset + "");
+                    params.put(PARAM_VIEWMODE, viewMode);
+                    // params.put(PARAM_ORDERBY, "feed_dates");
+
+                    if (skipProperties == null || !skipProperties.contains(Article.ArticleField.content))
+                        params.put(PARAM_SHOW_CONTENT, "1");
+
+                    if (skipProperties == null || !skipProperties.contains(Article.ArticleField.attachments))
+                        params.put(PARAM_INC_ATTACHMENTS, "1");
+
+                    params.put(PARAM_IS_CAT, (isCategory ? "1" : "0"));
+
+                    if (sinceId > 0)
+                        params.put(PARAM_SINCE_ID, sinceId + "");
+
+                    if (search != null)
+                        params.put(PARAM_SEARCH, search);
+
+                    ApiRequest request = new ApiRequest(params);
+                    pending.add(new HeadlinesPage(request, executor.submit(new RequestTask(request))));
+                    offset += limitParam;
+                }
+
+                HeadlinesPage page = pending.poll();
+                if (page == null)
+                    break;
+
+                JsonReader reader = null;
+                try {
+                    byte[] response = page.response.get();
+                    reader = prepareReader(page.request, response == null ? null : new ByteArrayInputStream(
+                            response));
+
+                    if (reader == null) {
+                        complete = false;
+                        break;
+                    }
+
+                    int count = parseArticleArray(articles, reader, skipProperties, filter);
+
+                    if (count < 0) {
+                        // A truncated page must not look like the last one
+                        page.request.fail("Headlines could not be parsed");
+                        reportError(page.request);
+                        complete = false;
+                        break;
+                    }
+                    if (count < limitParam)
+                        break;
+                } catch (StopJsonParsingException e) {
+                    break;
+                } catch (ExecutionException | IOException e) {
+                    e.printStackTrace();
+                    complete = false;
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    complete = false;
+                    break;
+                } finally {
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e1) {
+                            // Empty!
+                        }
+                    }
+                }
+            }
+        } finally {
+            // Pages after the last one or after parsing was stopped aren't needed anymore
+            for (HeadlinesPage page : pending) {
+                page.response.cancel(true);
+            }
+            executor.shutdownNow();
+        }
 
-            if (skipProperties == null || !skipProperties.contains(Article.ArticleField.content))
-                params.put(PARAM_SHOW_CONTENT, "1");
+        Log.d(TAG, "getHeadlines: " + (System.currentTimeMillis() - time) + "ms");
+        return complete;
+    }
 
-            if (skipProperties == null || !skipProperties.contains(Article.ArticleField.attachments))
-                params.put(PARAM_INC_ATTACHMENTS, "1");
+    /**
+     * a requested page of headlines
+     */
+    private static class HeadlinesPage {
+        private final ApiRequest request;
+        private final Future<byte[]> response;
+
+        private HeadlinesPage(ApiRequest request, Future<byte[]> response) {
+            this.request = request;
+            this.response = response;
+        }
+    }
 
-            params.put(PARAM_IS_CAT, (isCategory ? "1" : "0"));
+    /**
+     * does the request and reads the whole response, so the download isn't stalled until the response is parsed
+     */
+    private class RequestTask implements Callable<byte[]> {
+        private final ApiRequest request;
 
-            if (sinceId > 0)
-                params.put(PARAM_SINCE_ID, sinceId + "");
+        private RequestTask(ApiRequest request) {
+            this.request = request;
+        }
 
-            if (search != null)
-                params.put(PARAM_SEARCH, search);
+        @Override
+        public byte[] call() throws IOException {
+            InputStream in = send(request);
+            if (in == null)
+                return null;
 
-            JsonReader reader = null;
             try {
-                reader = prepareReader(params);
+                return IOUtils.toByteArray(in);
+            } finally {
+                in.close();
+            }
+        }
+    }
 
-                if (hasLastError)
-                    return;
+    /**
+     * passes articles on to another receiver and counts them
+     */
+    private static class CountingReceiver implements IArticleReceiver {
+        private final IArticleReceiver receiver;
+        private int count = 0;
 
-                if (reader == null)
-                    continue;
+        private CountingReceiver(IArticleReceiver receiver) {
+            this.receiver = receiver;
+        }
 
-                count = parseArticleArray(articles, reader, skipProperties, filter);
+        @Override
+        public void receiveArticle(Article a) {
+            count++;
+            receiver.receiveArticle(a);
+        }
+    }
 
-                if (count < limitParam)
-                    break;
-                else
-                    offset += count;
+    /**
+     * Retrieves the given articles including their content and hands them to the given receiver as soon as they are
+     * parsed.
+     *
+     * @param receiver receiver for retrieved articles
+     * @param ids      IDs of the articles to be fetched
+     * @return {@code true} if all articles were received, a failed request doesn't stop the remaining ones
+     */
+    public boolean getArticles(final IArticleReceiver receiver, Collection<Integer> ids) {
+        long time = System.currentTimeMillis();
+        if (ids.isEmpty())
+            return true;
+        if (!sessionAlive())
+            return false;
+
+        boolean complete = true;
+        for (String idList : StringSupport.convertListToString(ids, MAX_ID_LIST_LENGTH)) {
+            Map<String, String> params = new HashMap<>();
+            params.put(PARAM_OP, VALUE_GET_ARTICLE);
+            params.put(PARAM_ARTICLE_ID, idList);
+
+            ApiRequest request = new ApiRequest(params);
+            JsonReader reader = null;
+            try {
+                reader = prepareReader(request);
+
+                if (reader == null) {
+                    complete = false;
+                    continue;
+                }
+
+                if (parseArticleArray(receiver, reader, null, null) < 0) {
+                    request.fail("Articles could not be parsed");
+                    reportError(request);
+                    complete = false;
+                }
+            } catch (StopJsonParsingException e) {
+                // Can't happen without filter
+                break;
             } catch (IOException e) {
-                e.printStackTrace();
+                Log.w(TAG, "Reading articles failed: " + formatException(e));
+                complete = false;
             } finally {
                 if (reader != null) {
                     try {
@@ -910,7 +1377,8 @@ public abstract class JSONConnector {
             }
         }
 
-        Log.d(TAG, "getHeadlines: " + (System.currentTimeMillis() - time) + "ms");
+        Log.d(TAG, "getArticles: " + (System.currentTimeMillis() - time) + "ms");
+        return complete;
     }
 
     /**
@@ -977,20 +1445,91 @@ public abstract class JSONConnector {
             params.put(PARAM_MODE, articleState + "");
             params.put(PARAM_FIELD, "1");
             ret = ret && doRequestNoAnswer(params);
+        }
 
-            // Add a note to the article(s)
+        // Add the notes to the article(s)
+        return ret && setArticleNotes(ids);
+    }
 
-            for (Integer id : ids.keySet()) {
-                String note = ids.get(id);
-                if (note == null || note.equals(""))
-                    continue;
+    /**
+     * Sets the notes of the given articles. Each note is sent only once for all articles it belongs to, the requests
+     * for different notes are sent in parallel.
+     *
+     * @param notes a list of article-ids with corresponding notes, articles without note (null or empty) are skipped.
+     * @return true if the operation succeeded.
+     */
+    public boolean setArticleNotes(Map<Integer, String> notes) {
+        final Map<String, Set<Integer>> idsByNote = new LinkedHashMap<>();
+        for (Map.Entry<Integer, String> entry : notes.entrySet()) {
+            String note = entry.getValue();
+            if (note == null || note.equals(""))
+                continue;
+
+            Set<Integer> ids = idsByNote.get(note);
+            if (ids == null) {
+                ids = new LinkedHashSet<>();
+                idsByNote.put(note, ids);
+            }
+            ids.add(entry.getKey());
+        }
 
-                params.put(PARAM_FIELD, "3"); // Field 3 is the "Add note" field
-                params.put(PARAM_DATA, note);
-                ret = ret && doRequestNoAnswer(params);
+        if (idsByNote.isEmpty())
+            return true;
+
+        if (idsByNote.size() == 1) {
+            Map.Entry<String, Set<Integer>> entry = idsByNote.entrySet().iterator().next();
+            return setArticleNote(entry.getValue(), entry.getKey());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_NOTE_REQUESTS,
+                idsByNote.size()));
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(idsByNote.size());
+            for (final Map.Entry<String, Set<Integer>> entry : idsByNote.entrySet()) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return setArticleNote(entry.getValue(), entry.getKey());
+                    }
+                }));
+            }
+
+            boolean ret = true;
+            for (Future<Boolean> result : results) {
+                ret = result.get() && ret;
             }
+            return ret;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
         }
+    }
 
+    /**
+     * Sets the note of the given articles.
+     *
+     * @param ids  a list of article-ids.
+     * @param note the note, an empty note removes it.
+     * @return true if the operation succeeded.
+     */
+    public boolean setArticleNote(Set<Integer> ids, String note) {
+        boolean ret = true;
+        if (ids.size() == 0)
+            return true;
+
+        for (String idList : StringSupport.convertListToString(ids, MAX_ID_LIST_LENGTH)) {
+            Map<String, String> params = new HashMap<>();
+            params.put(PARAM_OP, VALUE_UPDATE_ARTICLE);
+            params.put(PARAM_ARTICLE_IDS, idList);
+            params.put(PARAM_FIELD, "3"); // Field 3 is the "Add note" field
+            params.put(PARAM_DATA, note == null ? "" : note);
+            ret = ret && doRequestNoAnswer(params);
+        }
         return ret;
     }
 
@@ -1030,10 +1569,13 @@ public abstract class JSONConnector {
         params.put(PARAM_OP, VALUE_GET_PREF);
         params.put(PARAM_PREF, pref);
 
+        ApiRequest request = new ApiRequest(params);
         try {
-            return readResult(params, false);
+            return readResult(request, false);
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            reportError(request);
         }
 
         return null;
@@ -1084,7 +1626,7 @@ public abstract class JSONConnector {
         String message = null;
         JsonReader reader = null;
         try {
-            reader = prepareReader(params);
+            reader = prepareReader(new ApiRequest(params));
             if (reader == null)
                 return ret;
 
@@ -1128,7 +1670,7 @@ public abstract class JSONConnector {
      * @return true if there was an error.
      */
     public boolean hasLastError() {
-        return hasLastError;
+        return lastError.get() != null;
     }
 
     /**
@@ -1137,11 +1679,8 @@ public abstract class JSONConnector {
      * @return a string with the last error-message.
      */
     public String pullLastError() {
-        @SuppressWarnings("RedundantStringConstructorCall")
-        String ret = new String(lastError);
-        lastError = "";
-        hasLastError = false;
-        return ret;
+        String ret = lastError.getAndSet(null);
+        return ret == null ? "" : ret;
     }
 
     protected static String formatException(Exception e) {
@@ -17,15 +17,21 @@
 
 package org.ttrssreader.net;
 
-import org.json.JSONObject;
+import com.google.gson.stream.JsonWriter;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.ttrssreader.controllers.Controller;
 import org.ttrssreader.utils.Utils;
 
 import android.util.Base64;
 import android.util.Log;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.Authenticator;
 import java.net.HttpURLConnection;
@@ -33,7 +39,9 @@ import java.net.PasswordAuthentication;
 import java.net.Proxy;
 import java.net.SocketException;
 import java.net.URL;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -44,30 +52,37 @@ public class JavaJSONConnector extends JSONConnector {
 
     protected String base64NameAndPw = null;
 
-    protected InputStream doRequest(Map<String, String> params) {
-        try {
-            if (sessionId != null)
-                params.put(SID, sessionId);
+    /**
+     * bytes received on the wire per API operation since the app was started
+     */
+    private final Map<String, Long> bytesPerOp = new HashMap<>();
 
-            JSONObject json = new JSONObject(params);
-            byte[] outputBytes = json.toString().getBytes("UTF-8");
+    static {
+        // Connections are kept alive and reused for the next request once a response has been read completely
+        System.setProperty("http.keepAlive", "true");
+    }
 
-            logRequest(json);
+    protected InputStream doRequest(ApiRequest request) {
+        Map<String, String> params = request.getParams();
+        try {
+            logRequest(params);
+            byte[] outputBytes = writeRequest(params);
 
             URL url = Controller.getInstance().url();
             HttpURLConnection con = (HttpURLConnection) url.openConnection(Proxy.NO_PROXY);
             con.setDoInput(true);
             con.setDoOutput(true);
             con.setUseCaches(false);
+            con.setFixedLengthStreamingMode(outputBytes.length);
 
             // Content
             con.setRequestProperty("Content-Type", "application/json");
             con.setRequestProperty("Accept", "application/json");
-            con.setRequestProperty("Content-Length", Integer.toString(outputBytes.length));
+            // Requesting it explicitly disables transparent decompression, so the compressed bytes can be counted
+            con.setRequestProperty("Accept-Encoding", "gzip");
 
             // Timeouts
-            int timeoutSocket = (int) ((Controller.getInstance().lazyServer()) ? 15 * Utils.MINUTE : 10 * Utils.SECOND);
-            con.setReadTimeout(timeoutSocket);
+            con.setReadTimeout(request.getReadTimeout());
             con.setConnectTimeout((int) (8 * Utils.SECOND));
 
             // HTTP-Basic Authentication
@@ -80,40 +95,109 @@ public class JavaJSONConnector extends JSONConnector {
             // Try to check for HTTP Status codes
             int code = con.getResponseCode();
             if (code >= 400 && code < 600) {
-                hasLastError = true;
-                lastError = "Server returned status: " + code + " (Message: " + con.getResponseMessage() + ")";
+                String message = "Server returned status: " + code + " (Message: " + con.getResponseMessage() + ")";
+                // Overloaded or temporarily broken servers are tried again
+                if (code >= 500 || code == 429)
+                    request.failUnreachable(message);
+                else
+                    request.fail(message);
+                // Drain the error response so the connection can be reused
+                InputStream err = con.getErrorStream();
+                if (err != null) {
+                    try {
+                        IOUtils.skip(err, Long.MAX_VALUE);
+                    } catch (IOException e) {
+                        // The connection is simply not reused then
+                        Log.d(TAG, "Draining the error response failed: " + formatException(e));
+                    } finally {
+                        IOUtils.closeQuietly(err);
+                    }
+                }
                 return null;
             }
 
             // Everything is fine!
-            return con.getInputStream();
+            InputStream in = new WireCountingInputStream(con.getInputStream(), params.get(PARAM_OP));
+            if ("gzip".equalsIgnoreCase(con.getContentEncoding()))
+                in = new GZIPInputStream(in);
+            return in;
 
         } catch (SSLPeerUnverifiedException e) {
             // Probably related: http://stackoverflow.com/questions/6035171/no-peer-cert-not-sure-which-route-to-take
             // Not doing anything here since this error should happen only when no certificate is received from the
             // server.
             Log.w(TAG, "SSLPeerUnverifiedException in doRequest(): " + formatException(e));
+            request.failUnreachable("SSLPeerUnverifiedException in doRequest(): " + formatException(e));
         } catch (SSLException e) {
             if ("No peer certificate".equals(e.getMessage())) {
                 // Handle this by ignoring it, this occurrs very often when the connection is instable.
                 Log.w(TAG, "SSLException in doRequest(): " + formatException(e));
+                request.failUnreachable("SSLException in doRequest(): " + formatException(e));
             } else {
-                hasLastError = true;
-                lastError = "SSLException in doRequest(): " + formatException(e);
+                request.fail("SSLException in doRequest(): " + formatException(e));
             }
         } catch (InterruptedIOException e) {
             Log.w(TAG, "InterruptedIOException in doRequest(): " + formatException(e));
+            request.failUnreachable("InterruptedIOException in doRequest(): " + formatException(e));
         } catch (SocketException e) {
             // http://stackoverflow.com/questions/693997/how-to-set-httpresponse-timeout-for-android-in-java/1565243#1565243
             Log.w(TAG, "SocketException in doRequest(): " + formatException(e));
+            request.failUnreachable("SocketException in doRequest(): " + formatException(e));
         } catch (Exception e) {
-            hasLastError = true;
-            lastError = "Exception in doRequest(): " + formatException(e);
+            request.fail("Exception in doRequest(): " + formatException(e));
         }
 
         return null;
     }
 
+    /**
+     * write the parameters as JSON object, streamed into a buffer instead of building a JSONObject first
+     */
+    private static byte[] writeRequest(Map<String, String> params) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, "UTF-8"));
+        try {
+            writer.beginObject();
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                writer.name(param.getKey()).value(param.getValue());
+            }
+            writer.endObject();
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * counts the bytes received on the wire, i.e. before decompression, and logs them once the response is closed
+     */
+    private class WireCountingInputStream extends CountingInputStream {
+        private final String op;
+        private boolean closed = false;
+
+        private WireCountingInputStream(InputStream in, String op) {
+            super(in);
+            this.op = op;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (closed)
+                return;
+            closed = true;
+
+            long bytes = getByteCount();
+            long total;
+            synchronized (bytesPerOp) {
+                Long sum = bytesPerOp.get(op);
+                total = (sum == null ? 0 : sum) + bytes;
+                bytesPerOp.put(op, total);
+            }
+            Log.d(TAG, String.format("%s: %s bytes received (%s bytes in total)", op, bytes, total));
+        }
+    }
+
     @Override
     public void init() {
         super.init();
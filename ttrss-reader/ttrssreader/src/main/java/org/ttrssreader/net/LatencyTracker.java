@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.net;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the latest response times (until the response headers arrived) per API operation, so timeouts can be derived
+ * from what the server and the network actually achieve instead of fixed values.
+ */
+class LatencyTracker {
+
+    /**
+     * number of response times kept per operation
+     */
+    private static final int SAMPLES = 32;
+
+    /**
+     * less response times than this are no reliable base for a percentile
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    private final Map<String, Samples> samplesPerOp = new HashMap<>();
+
+    synchronized void add(String op, long millis) {
+        Samples samples = samplesPerOp.get(op);
+        if (samples == null) {
+            samples = new Samples();
+            samplesPerOp.put(op, samples);
+        }
+        samples.values[samples.next] = millis;
+        samples.next = (samples.next + 1) % SAMPLES;
+        if (samples.count < SAMPLES)
+            samples.count++;
+    }
+
+    /**
+     * @param op         the API operation
+     * @param percentile the percentile between 0 and 1
+     * @return the given percentile of the latest response times of the operation in milliseconds, -1 if there are not
+     * enough response times yet
+     */
+    synchronized long percentile(String op, double percentile) {
+        Samples samples = samplesPerOp.get(op);
+        if (samples == null || samples.count < MIN_SAMPLES)
+            return -1;
+
+        long[] sorted = Arrays.copyOf(samples.values, samples.count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static class Samples {
+        private final long[] values = new long[SAMPLES];
+        private int next = 0;
+        private int count = 0;
+    }
+
+}
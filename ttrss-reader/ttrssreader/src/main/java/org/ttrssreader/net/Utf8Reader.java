@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes UTF-8 like {@link java.io.InputStreamReader} but reads the stream in larger blocks. The buffer is handed on
+ * to the next reader when this one is closed, so parsing a response doesn't allocate a new one.
+ */
+class Utf8Reader extends Reader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * buffer of the last closed reader
+     */
+    private static final AtomicReference<ByteBuffer> spareBuffer = new AtomicReference<>();
+
+    private final InputStream in;
+    private final CharsetDecoder decoder;
+    private ByteBuffer bytes;
+
+    private boolean endOfInput = false;
+    private boolean flushed = false;
+
+    Utf8Reader(InputStream in) {
+        this.in = in;
+        decoder = UTF8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+                CodingErrorAction.REPLACE);
+
+        ByteBuffer buffer = spareBuffer.getAndSet(null);
+        if (buffer == null)
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        // Nothing to decode yet
+        buffer.clear();
+        buffer.flip();
+        bytes = buffer;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (bytes == null)
+            throw new IOException("Reader closed");
+        if (len == 0)
+            return 0;
+        if (flushed)
+            return -1;
+
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (true) {
+            CoderResult result = decoder.decode(bytes, out, endOfInput);
+
+            // Return what has been decoded so far instead of blocking on the stream
+            if (result.isOverflow() || out.position() > off)
+                break;
+
+            if (endOfInput) {
+                decoder.flush(out);
+                flushed = true;
+                break;
+            }
+
+            fill();
+        }
+
+        int count = out.position() - off;
+        return (count == 0 && flushed) ? -1 : count;
+    }
+
+    /**
+     * read the next block from the stream, bytes of an incomplete character are kept in front of it
+     */
+    private void fill() throws IOException {
+        bytes.compact();
+        int count = in.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        if (count < 0)
+            endOfInput = true;
+        else
+            bytes.position(bytes.position() + count);
+        bytes.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (bytes == null)
+            return;
+
+        spareBuffer.set(bytes);
+        bytes = null;
+        in.close();
+    }
+
+}
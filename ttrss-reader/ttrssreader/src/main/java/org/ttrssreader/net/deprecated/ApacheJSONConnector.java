@@ -32,6 +32,7 @@ import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.json.JSONObject;
 import org.ttrssreader.controllers.Controller;
+import org.ttrssreader.net.ApiRequest;
 import org.ttrssreader.net.JSONConnector;
 import org.ttrssreader.preferences.Constants;
 import org.ttrssreader.utils.Utils;
@@ -56,13 +57,11 @@ public class ApacheJSONConnector extends JSONConnector {
     protected CredentialsProvider credProvider = null;
     protected DefaultHttpClient client;
 
-    protected InputStream doRequest(Map<String, String> params) {
+    protected InputStream doRequest(ApiRequest request) {
+        Map<String, String> params = request.getParams();
         HttpPost post = new HttpPost();
 
         try {
-            if (sessionId != null)
-                params.put(SID, sessionId);
-
             // Set Address
             post.setURI(Controller.getInstance().uri());
             post.addHeader("Accept-Encoding", "gzip");
@@ -82,32 +81,30 @@ public class ApacheJSONConnector extends JSONConnector {
                 HttpConnectionParams.setConnectionTimeout(httpParams, timeoutConnection);
 
                 // Set the default socket timeout (SO_TIMEOUT) which is the timeout for waiting for data.
-                // use longer timeout when lazyServer-Feature is used
-                int timeoutSocket = (int) ((Controller.getInstance().lazyServer()) ? 15 * Utils.MINUTE
-                        : 10 * Utils.SECOND);
-                HttpConnectionParams.setSoTimeout(httpParams, timeoutSocket);
+                HttpConnectionParams.setSoTimeout(httpParams, request.getReadTimeout());
 
                 post.setParams(httpParams);
             }
 
             logRequest(json);
 
-            if (client == null)
-                client = HttpClientFactory.getInstance().getHttpClient(post.getParams());
-            else
-                client.setParams(post.getParams());
+            // The client is shared by all requests, its connection manager is thread-safe but setting it up isn't
+            synchronized (this) {
+                if (client == null)
+                    client = HttpClientFactory.getInstance().getHttpClient(post.getParams());
+                else
+                    client.setParams(post.getParams());
 
-            // Add SSL-Stuff
-            if (credProvider != null)
-                client.setCredentialsProvider(credProvider);
+                // Add SSL-Stuff
+                if (credProvider != null)
+                    client.setCredentialsProvider(credProvider);
+            }
 
         } catch (URISyntaxException e) {
-            hasLastError = true;
-            lastError = "Invalid URI.";
+            request.fail("Invalid URI.");
             return null;
         } catch (Exception e) {
-            hasLastError = true;
-            lastError = "Error creating HTTP-Connection in (old) doRequest(): " + formatException(e);
+            request.fail("Error creating HTTP-Connection in (old) doRequest(): " + formatException(e));
             e.printStackTrace();
             return null;
         }
@@ -116,42 +113,46 @@ public class ApacheJSONConnector extends JSONConnector {
         try {
             response = client.execute(post); // Execute the request
         } catch (ClientProtocolException e) {
-            hasLastError = true;
-            lastError = "ClientProtocolException in (old) doRequest(): " + formatException(e);
+            request.fail("ClientProtocolException in (old) doRequest(): " + formatException(e));
             return null;
         } catch (SSLPeerUnverifiedException e) {
             // Probably related: http://stackoverflow.com/questions/6035171/no-peer-cert-not-sure-which-route-to-take
             // Not doing anything here since this error should happen only when no certificate is received from the
             // server.
             Log.w(TAG, "SSLPeerUnverifiedException in (old) doRequest(): " + formatException(e));
+            request.failUnreachable("SSLPeerUnverifiedException in (old) doRequest(): " + formatException(e));
             return null;
         } catch (SSLException e) {
             if ("No peer certificate".equals(e.getMessage())) {
                 // Handle this by ignoring it, this occurrs very often when the connection is instable.
                 Log.w(TAG, "SSLException in (old) doRequest(): " + formatException(e));
+                request.failUnreachable("SSLException in (old) doRequest(): " + formatException(e));
             } else {
-                hasLastError = true;
-                lastError = "SSLException in (old) doRequest(): " + formatException(e);
+                request.fail("SSLException in (old) doRequest(): " + formatException(e));
             }
             return null;
         } catch (InterruptedIOException e) {
             Log.w(TAG, "InterruptedIOException in (old) doRequest(): " + formatException(e));
+            request.failUnreachable("InterruptedIOException in (old) doRequest(): " + formatException(e));
             return null;
         } catch (SocketException e) {
             // http://stackoverflow.com/questions/693997/how-to-set-httpresponse-timeout-for-android-in-java/1565243#1565243
             Log.w(TAG, "SocketException in (old) doRequest(): " + formatException(e));
+            request.failUnreachable("SocketException in (old) doRequest(): " + formatException(e));
             return null;
         } catch (Exception e) {
-            hasLastError = true;
-            lastError = "Exception in (old) doRequest(): " + formatException(e);
+            request.fail("Exception in (old) doRequest(): " + formatException(e));
             return null;
         }
 
         // Try to check for HTTP Status codes
         int code = response.getStatusLine().getStatusCode();
         if (code >= 400 && code < 600) {
-            hasLastError = true;
-            lastError = "Server returned status: " + code;
+            // Overloaded or temporarily broken servers are tried again
+            if (code >= 500 || code == 429)
+                request.failUnreachable("Server returned status: " + code);
+            else
+                request.fail("Server returned status: " + code);
             return null;
         }
 
@@ -170,8 +171,7 @@ public class ApacheJSONConnector extends JSONConnector {
             // Log.d(TAG, "SIZE: " + size.getValue());
 
             if (instream == null) {
-                hasLastError = true;
-                lastError = "Couldn't get InputStream in (old) Method doRequest(String url) [instream was null]";
+                request.fail("Couldn't get InputStream in (old) Method doRequest(String url) [instream was null]");
                 return null;
             }
         } catch (Exception e) {
@@ -181,8 +181,7 @@ public class ApacheJSONConnector extends JSONConnector {
                 } catch (IOException e1) {
                     // Empty!
                 }
-            hasLastError = true;
-            lastError = "Exception in (old) doRequest(): " + formatException(e);
+            request.fail("Exception in (old) doRequest(): " + formatException(e));
             return null;
         }
 
@@ -125,6 +125,11 @@ public class Constants {
     public static final String DELETE_DB_SCHEDULED = "DeleteDBScheduledPreference";
     public static final String CACHE_IMAGES_ON_STARTUP = "CacheImagesOnStartupPreference";
     public static final String CACHE_IMAGES_ONLY_WIFI = "CacheImagesOnlyWifiPreference";
+    public static final String PREFETCH_IMAGES = "PrefetchImagesPreference";
+    public static final String PURGE_ARTICLE_LIMIT = "PurgeArticleLimitPreference";
+    public static final String PURGE_ARTICLE_MAX_AGE = "PurgeArticleMaxAgePreference";
+    public static final String PURGE_KEEP_STARRED = "PurgeKeepStarredPreference";
+    public static final String PURGE_KEEP_PUBLISHED = "PurgeKeepPublishedPreference";
     public static final String ONLY_USE_WIFI = "OnlyUseWifiPreference";
     public static final String NO_CRASHREPORTS = "NoCrashreportsPreference";
     public static final String NO_CRASHREPORTS_UNTIL_UPDATE = "NoCrashreportsUntilUpdatePreference";
@@ -137,6 +142,11 @@ public class Constants {
     public static final boolean DELETE_DB_SCHEDULED_DEFAULT = false;
     public static final boolean CACHE_IMAGES_ON_STARTUP_DEFAULT = false;
     public static final boolean CACHE_IMAGES_ONLY_WIFI_DEFAULT = false;
+    public static final boolean PREFETCH_IMAGES_DEFAULT = false;
+    public static final Integer PURGE_ARTICLE_LIMIT_DEFAULT = Utils.ARTICLE_LIMIT;
+    public static final Integer PURGE_ARTICLE_MAX_AGE_DEFAULT = 0; // days, 0 keeps articles regardless of their age
+    public static final boolean PURGE_KEEP_STARRED_DEFAULT = true;
+    public static final boolean PURGE_KEEP_PUBLISHED_DEFAULT = true;
     public static final boolean ONLY_USE_WIFI_DEFAULT = false;
     public static final boolean NO_CRASHREPORTS_DEFAULT = false;
     public static final boolean NO_CRASHREPORTS_UNTIL_UPDATE_DEFAULT = false;
@@ -150,6 +160,13 @@ public class Constants {
     public static final String SINCE_ID = "sinceId";
     public static final String LAST_SYNC = "lastSync";
     public static final String LAST_CLEANUP = "lastCleanup";
+    public static final String HEADLINES_PIPELINE_DEPTH = "headlinesPipelineDepth";
+    public static final String LAZY_SERVER_CONCURRENCY = "lazyServerConcurrency";
+    public static final String LAZY_SERVER_FEED_UPDATES = "lazyServerFeedUpdates";
+    public static final String SESSION_ID = "sessionId";
+    public static final String SESSION_API_LEVEL = "sessionApiLevel";
+    public static final String SESSION_ACCOUNT = "sessionAccount";
+    public static final String FEED_RETENTION_POLICIES = "feedRetentionPolicies";
     public static final String ENABLE_WIFI_BASED_SUFFIX = "_pref_enable_wifibased";
     // Internal Default Values
     public static final long APP_VERSION_CHECK_TIME_DEFAULT = 0;
@@ -160,6 +177,13 @@ public class Constants {
     public static final int SINCE_ID_DEFAULT = 0;
     public static final long LAST_SYNC_DEFAULT = 0l;
     public static final long LAST_CLEANUP_DEFAULT = 0l;
+    public static final int HEADLINES_PIPELINE_DEPTH_DEFAULT = 3;
+    public static final int LAZY_SERVER_CONCURRENCY_DEFAULT = 4;
+    public static final String LAZY_SERVER_FEED_UPDATES_DEFAULT = "";
+    public static final String SESSION_ID_DEFAULT = "";
+    public static final int SESSION_API_LEVEL_DEFAULT = -1;
+    public static final String SESSION_ACCOUNT_DEFAULT = "";
+    public static final String FEED_RETENTION_POLICIES_DEFAULT = "";
     public static final int ACTIVITY_SHOW_PREFERENCES = 43;
 
     /*
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.utils;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression of article content with a preset dictionary of markup which is common in feed HTML, so even
+ * short articles compress well.
+ */
+public class ContentCompression {
+
+    private static final String TAG = ContentCompression.class.getSimpleName();
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Content shorter than this is stored uncompressed, it would hardly get smaller
+     */
+    private static final int MIN_LENGTH = 256;
+
+    // Deflate prefers matches close to the data, so the most common strings are at the end of the dictionary
+    // @formatter:off
+    private static final byte[] DICTIONARY = (
+            "<iframe width=\"560\" height=\"315\" src=\"https://www.youtube.com/embed/\" frameborder=\"0\" allowfullscreen>"
+            + "</iframe><figure class=\"wp-caption\"><figcaption></figcaption></figure><table><tbody><tr><td></td></tr>"
+            + "</tbody></table><blockquote></blockquote><h1></h1><h2></h2><h3></h3><h4></h4><pre><code></code></pre>"
+            + "<ol><li></li></ol><ul><li></li></ul><em></em><strong></strong><b></b><i></i><span style=\"\"></span>"
+            + "<div class=\"feedflare\"><img src=\"http://feeds.feedburner.com/~ff/\" border=\"0\"></img></div>"
+            + "<img src=\"http://feeds.feedburner.com/~r/\" height=\"1\" width=\"1\" alt=\"\"/>"
+            + "The post appeared first on Continue reading Read more &raquo; &hellip; &amp; &quot; &#8217; &#8220; "
+            + "&#8221; &nbsp; <div class=\"\"><div id=\"\"></div><br/><br /><p></p> target=\"_blank\" rel=\"nofollow\" "
+            + "<a href=\"http://\"><a href=\"https://\"></a> title=\"\" alt=\"\" width=\"\" height=\"\" class=\"\" "
+            + "<img src=\"http://\" /><img src=\"https://\" /><p><a href=\"https://www.\"></a></p>"
+    ).getBytes(UTF8);
+    // @formatter:on
+
+    /**
+     * compress the given content
+     *
+     * @param content the article content
+     * @return the compressed content or {@code null} if the content should better be stored as it is
+     */
+    public static byte[] compress(String content) {
+        if (content == null || content.length() < MIN_LENGTH)
+            return null;
+
+        byte[] input = content.getBytes(UTF8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 3);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+
+            // Not worth the effort of decompressing it when reading
+            if (out.size() >= input.length)
+                return null;
+
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * decompress content which was compressed with {@link #compress(String)}
+     *
+     * @param data the compressed content
+     * @return the article content or {@code null} if the data couldn't be decompressed
+     */
+    public static String decompress(byte[] data) {
+        if (data == null)
+            return null;
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary())
+                        inflater.setDictionary(DICTIONARY);
+                    else if (inflater.needsInput())
+                        throw new DataFormatException("Unexpected end of data");
+                }
+                out.write(buffer, 0, count);
+            }
+
+            return new String(out.toByteArray(), UTF8);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Couldn't decompress article content: " + e.getMessage());
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
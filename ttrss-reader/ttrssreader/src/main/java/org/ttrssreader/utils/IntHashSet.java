@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Set of ints using open addressing with linear probing, the values are not boxed.
+ */
+public class IntHashSet {
+
+    private static final int FREE_KEY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    // 0 marks free slots, so it is tracked separately
+    private boolean hasFreeKey;
+
+    public IntHashSet() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        threshold = capacity / 2;
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * @return {@code true} if the value wasn't in the set yet
+     */
+    public boolean add(int key) {
+        if (key == FREE_KEY) {
+            if (hasFreeKey)
+                return false;
+            hasFreeKey = true;
+            size++;
+            return true;
+        }
+
+        int i = slot(key, mask);
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key)
+                return false;
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        if (++size > threshold)
+            rehash(keys.length * 2);
+        return true;
+    }
+
+    public boolean contains(int key) {
+        if (key == FREE_KEY)
+            return hasFreeKey;
+
+        int i = slot(key, mask);
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * remove all values, the allocated array is kept for reuse
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    /**
+     * add all values of this set to the given collection
+     */
+    public void addTo(Collection<Integer> collection) {
+        if (hasFreeKey)
+            collection.add(FREE_KEY);
+        for (int key : keys) {
+            if (key != FREE_KEY)
+                collection.add(key);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        allocate(capacity);
+
+        for (int key : oldKeys) {
+            if (key == FREE_KEY)
+                continue;
+
+            int i = slot(key, mask);
+            while (keys[i] != FREE_KEY)
+                i = (i + 1) & mask;
+            keys[i] = key;
+        }
+    }
+
+}
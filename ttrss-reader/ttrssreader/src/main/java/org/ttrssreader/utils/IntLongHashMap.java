@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015, Nils Braden
+ *
+ * This file is part of ttrss-reader-fork. This program is free software; you
+ * can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation;
+ * either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details. You should have received a
+ * copy of the GNU General Public License along with this program; If
+ * not, see http://www.gnu.org/licenses/.
+ */
+
+package org.ttrssreader.utils;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from int to long using open addressing with linear probing. Keys and values are kept in primitive arrays,
+ * so neither of them is boxed. {@link #clear()} keeps the arrays, so a map can be refilled without allocating again.
+ */
+public class IntLongHashMap {
+
+    private static final int FREE_KEY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+
+    // Key 0 marks free slots, so its value is stored separately
+    private boolean hasFreeKey;
+    private long freeKeyValue;
+
+    public IntLongHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of entries the map should hold without growing
+     */
+    public IntLongHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Keep the load factor at or below 0.5
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = capacity / 2;
+    }
+
+    private static int slot(int key, int mask) {
+        // Fibonacci hashing spreads sequential IDs over the table
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * make sure the map can hold the given number of entries without growing
+     */
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize > threshold)
+            rehash(capacityFor(expectedSize));
+    }
+
+    public void put(int key, long value) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey)
+                size++;
+            hasFreeKey = true;
+            freeKeyValue = value;
+            return;
+        }
+
+        int i = slot(key, mask);
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold)
+            rehash(keys.length * 2);
+    }
+
+    /**
+     * @return the value for the given key or {@code defaultValue} if the map doesn't contain the key
+     */
+    public long get(int key, long defaultValue) {
+        if (key == FREE_KEY)
+            return hasFreeKey ? freeKeyValue : defaultValue;
+
+        int i = slot(key, mask);
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key)
+                return values[i];
+            i = (i + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY)
+            return hasFreeKey;
+
+        int i = slot(key, mask);
+        while (keys[i] != FREE_KEY) {
+            if (keys[i] == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * remove all entries, the allocated arrays are kept for reuse
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key == FREE_KEY)
+                continue;
+
+            int i = slot(key, mask);
+            while (keys[i] != FREE_KEY)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+    }
+
+}
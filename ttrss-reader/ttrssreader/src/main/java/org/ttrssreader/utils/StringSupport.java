@@ -18,7 +18,9 @@
 package org.ttrssreader.utils;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 // contains code from the Apache Software foundation
@@ -58,6 +60,266 @@ public class StringSupport {
         return ret;
     }
 
+    /**
+     * names of the HTML 4 entities of ISO 8859-1 (Latin-1), in the order of their code points from U+00A0 to U+00FF
+     */
+    private static final String[] LATIN1_ENTITIES = {
+            "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect", "uml", "copy", "ordf", "laquo", "not",
+            "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot", "cedil", "sup1",
+            "ordm", "raquo", "frac14", "frac12", "frac34", "iquest", "Agrave", "Aacute", "Acirc", "Atilde", "Auml",
+            "Aring", "AElig", "Ccedil", "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+            "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times", "Oslash", "Ugrave", "Uacute",
+            "Ucirc", "Uuml", "Yacute", "THORN", "szlig", "agrave", "aacute", "acirc", "atilde", "auml", "aring",
+            "aelig", "ccedil", "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml", "eth",
+            "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide", "oslash", "ugrave", "uacute", "ucirc",
+            "uuml", "yacute", "thorn", "yuml"};
+
+    private static final Map<String, Character> ENTITIES = new HashMap<>(256);
+
+    static {
+        for (int i = 0; i < LATIN1_ENTITIES.length; i++) {
+            ENTITIES.put(LATIN1_ENTITIES[i], (char) (0xa0 + i));
+        }
+        // Special characters, symbols and greek letters of HTML 4
+        ENTITIES.put("quot", '"');
+        ENTITIES.put("amp", '&');
+        ENTITIES.put("lt", '<');
+        ENTITIES.put("gt", '>');
+        ENTITIES.put("OElig", '\u0152');
+        ENTITIES.put("oelig", '\u0153');
+        ENTITIES.put("Scaron", '\u0160');
+        ENTITIES.put("scaron", '\u0161');
+        ENTITIES.put("Yuml", '\u0178');
+        ENTITIES.put("fnof", '\u0192');
+        ENTITIES.put("circ", '\u02c6');
+        ENTITIES.put("tilde", '\u02dc');
+        ENTITIES.put("Alpha", '\u0391');
+        ENTITIES.put("Beta", '\u0392');
+        ENTITIES.put("Gamma", '\u0393');
+        ENTITIES.put("Delta", '\u0394');
+        ENTITIES.put("Epsilon", '\u0395');
+        ENTITIES.put("Zeta", '\u0396');
+        ENTITIES.put("Eta", '\u0397');
+        ENTITIES.put("Theta", '\u0398');
+        ENTITIES.put("Iota", '\u0399');
+        ENTITIES.put("Kappa", '\u039a');
+        ENTITIES.put("Lambda", '\u039b');
+        ENTITIES.put("Mu", '\u039c');
+        ENTITIES.put("Nu", '\u039d');
+        ENTITIES.put("Xi", '\u039e');
+        ENTITIES.put("Omicron", '\u039f');
+        ENTITIES.put("Pi", '\u03a0');
+        ENTITIES.put("Rho", '\u03a1');
+        ENTITIES.put("Sigma", '\u03a3');
+        ENTITIES.put("Tau", '\u03a4');
+        ENTITIES.put("Upsilon", '\u03a5');
+        ENTITIES.put("Phi", '\u03a6');
+        ENTITIES.put("Chi", '\u03a7');
+        ENTITIES.put("Psi", '\u03a8');
+        ENTITIES.put("Omega", '\u03a9');
+        ENTITIES.put("alpha", '\u03b1');
+        ENTITIES.put("beta", '\u03b2');
+        ENTITIES.put("gamma", '\u03b3');
+        ENTITIES.put("delta", '\u03b4');
+        ENTITIES.put("epsilon", '\u03b5');
+        ENTITIES.put("zeta", '\u03b6');
+        ENTITIES.put("eta", '\u03b7');
+        ENTITIES.put("theta", '\u03b8');
+        ENTITIES.put("iota", '\u03b9');
+        ENTITIES.put("kappa", '\u03ba');
+        ENTITIES.put("lambda", '\u03bb');
+        ENTITIES.put("mu", '\u03bc');
+        ENTITIES.put("nu", '\u03bd');
+        ENTITIES.put("xi", '\u03be');
+        ENTITIES.put("omicron", '\u03bf');
+        ENTITIES.put("pi", '\u03c0');
+        ENTITIES.put("rho", '\u03c1');
+        ENTITIES.put("sigmaf", '\u03c2');
+        ENTITIES.put("sigma", '\u03c3');
+        ENTITIES.put("tau", '\u03c4');
+        ENTITIES.put("upsilon", '\u03c5');
+        ENTITIES.put("phi", '\u03c6');
+        ENTITIES.put("chi", '\u03c7');
+        ENTITIES.put("psi", '\u03c8');
+        ENTITIES.put("omega", '\u03c9');
+        ENTITIES.put("thetasym", '\u03d1');
+        ENTITIES.put("upsih", '\u03d2');
+        ENTITIES.put("piv", '\u03d6');
+        ENTITIES.put("ensp", '\u2002');
+        ENTITIES.put("emsp", '\u2003');
+        ENTITIES.put("thinsp", '\u2009');
+        ENTITIES.put("zwnj", '\u200c');
+        ENTITIES.put("zwj", '\u200d');
+        ENTITIES.put("lrm", '\u200e');
+        ENTITIES.put("rlm", '\u200f');
+        ENTITIES.put("ndash", '\u2013');
+        ENTITIES.put("mdash", '\u2014');
+        ENTITIES.put("lsquo", '\u2018');
+        ENTITIES.put("rsquo", '\u2019');
+        ENTITIES.put("sbquo", '\u201a');
+        ENTITIES.put("ldquo", '\u201c');
+        ENTITIES.put("rdquo", '\u201d');
+        ENTITIES.put("bdquo", '\u201e');
+        ENTITIES.put("dagger", '\u2020');
+        ENTITIES.put("Dagger", '\u2021');
+        ENTITIES.put("bull", '\u2022');
+        ENTITIES.put("hellip", '\u2026');
+        ENTITIES.put("permil", '\u2030');
+        ENTITIES.put("prime", '\u2032');
+        ENTITIES.put("Prime", '\u2033');
+        ENTITIES.put("lsaquo", '\u2039');
+        ENTITIES.put("rsaquo", '\u203a');
+        ENTITIES.put("oline", '\u203e');
+        ENTITIES.put("frasl", '\u2044');
+        ENTITIES.put("euro", '\u20ac');
+        ENTITIES.put("image", '\u2111');
+        ENTITIES.put("weierp", '\u2118');
+        ENTITIES.put("real", '\u211c');
+        ENTITIES.put("trade", '\u2122');
+        ENTITIES.put("alefsym", '\u2135');
+        ENTITIES.put("larr", '\u2190');
+        ENTITIES.put("uarr", '\u2191');
+        ENTITIES.put("rarr", '\u2192');
+        ENTITIES.put("darr", '\u2193');
+        ENTITIES.put("harr", '\u2194');
+        ENTITIES.put("crarr", '\u21b5');
+        ENTITIES.put("lArr", '\u21d0');
+        ENTITIES.put("uArr", '\u21d1');
+        ENTITIES.put("rArr", '\u21d2');
+        ENTITIES.put("dArr", '\u21d3');
+        ENTITIES.put("hArr", '\u21d4');
+        ENTITIES.put("forall", '\u2200');
+        ENTITIES.put("part", '\u2202');
+        ENTITIES.put("exist", '\u2203');
+        ENTITIES.put("empty", '\u2205');
+        ENTITIES.put("nabla", '\u2207');
+        ENTITIES.put("isin", '\u2208');
+        ENTITIES.put("notin", '\u2209');
+        ENTITIES.put("ni", '\u220b');
+        ENTITIES.put("prod", '\u220f');
+        ENTITIES.put("sum", '\u2211');
+        ENTITIES.put("minus", '\u2212');
+        ENTITIES.put("lowast", '\u2217');
+        ENTITIES.put("radic", '\u221a');
+        ENTITIES.put("prop", '\u221d');
+        ENTITIES.put("infin", '\u221e');
+        ENTITIES.put("ang", '\u2220');
+        ENTITIES.put("and", '\u2227');
+        ENTITIES.put("or", '\u2228');
+        ENTITIES.put("cap", '\u2229');
+        ENTITIES.put("cup", '\u222a');
+        ENTITIES.put("int", '\u222b');
+        ENTITIES.put("there4", '\u2234');
+        ENTITIES.put("sim", '\u223c');
+        ENTITIES.put("cong", '\u2245');
+        ENTITIES.put("asymp", '\u2248');
+        ENTITIES.put("ne", '\u2260');
+        ENTITIES.put("equiv", '\u2261');
+        ENTITIES.put("le", '\u2264');
+        ENTITIES.put("ge", '\u2265');
+        ENTITIES.put("sub", '\u2282');
+        ENTITIES.put("sup", '\u2283');
+        ENTITIES.put("nsub", '\u2284');
+        ENTITIES.put("sube", '\u2286');
+        ENTITIES.put("supe", '\u2287');
+        ENTITIES.put("oplus", '\u2295');
+        ENTITIES.put("otimes", '\u2297');
+        ENTITIES.put("perp", '\u22a5');
+        ENTITIES.put("sdot", '\u22c5');
+        ENTITIES.put("lceil", '\u2308');
+        ENTITIES.put("rceil", '\u2309');
+        ENTITIES.put("lfloor", '\u230a');
+        ENTITIES.put("rfloor", '\u230b');
+        ENTITIES.put("lang", '\u2329');
+        ENTITIES.put("rang", '\u232a');
+        ENTITIES.put("loz", '\u25ca');
+        ENTITIES.put("spades", '\u2660');
+        ENTITIES.put("clubs", '\u2663');
+        ENTITIES.put("hearts", '\u2665');
+        ENTITIES.put("diams", '\u2666');
+        // Not part of HTML 4 but of XML and XHTML
+        ENTITIES.put("apos", '\'');
+    }
+
+    /**
+     * Decodes HTML entities and removes tags from short texts like article titles. This is a lot cheaper than
+     * Html.fromHtml(), which builds a complete Spanned, and returns the given string itself if there is nothing to
+     * decode. Unknown entities are kept as they are, just like a {@code <} which does not start a tag.
+     *
+     * @param html the text to be decoded
+     * @return the plain text
+     */
+    public static String decodeHtml(String html) {
+        if (html == null || (html.indexOf('&') < 0 && html.indexOf('<') < 0))
+            return html;
+
+        int length = html.length();
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+
+            if (c == '<' && isTagStart(html, i + 1)) {
+                // Skip tags completely, an unclosed one is kept as text
+                int end = html.indexOf('>', i);
+                if (end > 0) {
+                    i = end + 1;
+                    continue;
+                }
+            }
+
+            if (c == '&') {
+                int end = html.indexOf(';', i);
+                // Entities are short, don't search through the whole string
+                if (end > i + 1 && end - i <= 10) {
+                    int codePoint = decodeEntity(html, i + 1, end);
+                    if (codePoint >= 0) {
+                        sb.appendCodePoint(codePoint);
+                        i = end + 1;
+                        continue;
+                    }
+                }
+            }
+
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return {@code true} if the character at the given index can follow the opening bracket of a tag, comment or
+     * doctype, a bracket followed by anything else (e.g. "1 < 2") is plain text
+     */
+    private static boolean isTagStart(String html, int index) {
+        if (index >= html.length())
+            return false;
+        char c = html.charAt(index);
+        return c == '/' || c == '!' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * @return the code point of the entity between start and end (exclusive) or -1 if it is unknown
+     */
+    private static int decodeEntity(String html, int start, int end) {
+        if (html.charAt(start) == '#') {
+            try {
+                int codePoint;
+                if (html.charAt(start + 1) == 'x' || html.charAt(start + 1) == 'X')
+                    codePoint = Integer.parseInt(html.substring(start + 2, end), 16);
+                else
+                    codePoint = Integer.parseInt(html.substring(start + 1, end));
+                // NUL isn't a character which can be displayed
+                return (codePoint > 0 && Character.isValidCodePoint(codePoint)) ? codePoint : -1;
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                return -1;
+            }
+        }
+
+        Character c = ENTITIES.get(html.substring(start, end));
+        return c == null ? -1 : c;
+    }
+
     public static String[] setToArray(Set<String> set) {
         String[] ret = new String[set.size()];
         int i = 0;
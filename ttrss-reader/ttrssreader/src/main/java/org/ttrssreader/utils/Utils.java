@@ -184,9 +184,11 @@ public class Utils {
      * Checks if the option to work offline is set or if the data-connection isn't established, else returns true. If
      * we
      * are about to connect it waits for maximum one second and then returns the network state without waiting anymore.
+     * While the server couldn't be reached several times in a row we work offline too until it is probed again.
      */
     public static boolean isConnected(ConnectivityManager cm) {
-        return !Controller.getInstance().workOffline() && checkConnected(cm);
+        return !Controller.getInstance().workOffline() && checkConnected(cm)
+                && !Controller.getInstance().getConnector().isServerUnreachable();
     }
 
     /**